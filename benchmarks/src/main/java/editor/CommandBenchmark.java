@@ -0,0 +1,48 @@
+package editor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// CommandManager throughput: a command executed and undone again, on a
+// document of the given size.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Deditor.journal=false", "-Xmx4g"})
+public class CommandBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int shapes;
+
+    private DrawingPanel panel;
+    private CommandManager commands;
+    private List<ColoredShape> document;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        panel = new DrawingPanel();
+        panel.setDocument(new DocumentGenerator().setCount(shapes).generate());
+        document = panel.getShapes();
+        commands = new CommandManager();
+        // every command is a separate undo step
+        commands.setMergeWindow(0);
+    }
+
+    @Benchmark
+    public void moveAndUndo() {
+        ColoredShape shape = document.get(next++ % document.size());
+        double x = shape.getX(), y = shape.getY();
+        commands.executeCommand(new MoveCommand(panel, shape, x, y, x + 5, y + 5));
+        commands.undo();
+    }
+
+    @Benchmark
+    public void addAndUndo() {
+        commands.executeCommand(new AddShapeCommand(panel, new RectangleShape(next++ % 1000, 100, 20, 20)));
+        commands.undo();
+    }
+}
@@ -0,0 +1,53 @@
+package editor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// Whole-document exports from a snapshot: streaming SVG through
+// GraphicAdapter.exportToSVG, and the tiled rasterization behind Save as
+// PNG/JPEG without the encoder.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Deditor.journal=false", "-Xmx4g"})
+public class ExportBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int shapes;
+
+    private DocumentSnapshot document;
+    private File svg;
+
+    @Setup
+    public void setUp() throws IOException {
+        DocumentGenerator generator = new DocumentGenerator().setCount(shapes);
+        DrawingPanel panel = new DrawingPanel();
+        panel.setDocument(generator.generate());
+        panel.setSize(generator.getCanvasSize());
+        document = panel.captureDocument();
+        svg = Files.createTempFile("benchmark", ".svg").toFile();
+    }
+
+    @TearDown
+    public void tearDown() {
+        svg.delete();
+    }
+
+    @Benchmark
+    public long exportToSVG() throws Exception {
+        new GraphicAdapter(document).exportToSVG(svg.getPath());
+        return svg.length();
+    }
+
+    @Benchmark
+    public BufferedImage rasterize() throws IOException {
+        return new RasterExporter(document, 1).render(BufferedImage.TYPE_INT_ARGB, (done, total) -> {
+        });
+    }
+}
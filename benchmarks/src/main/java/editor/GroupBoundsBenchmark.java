@@ -0,0 +1,53 @@
+package editor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.TimeUnit;
+
+// ShapeGroup.getBoundingBox on nested groups: straight from the cache, and
+// right after a leaf deep inside moved, which drops the cached bounds of
+// every group above it. Trees are sized by leaf count, since fanOut^depth
+// grows too fast to cross the two freely; the depth follows from the fan-out.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Deditor.journal=false", "-Xmx4g"})
+public class GroupBoundsBenchmark {
+    // powers of both 4 and 8
+    @Param({"64", "4096", "262144"})
+    public int leaves;
+
+    @Param({"4", "8"})
+    public int fanOut;
+
+    private ShapeGroup root;
+    private ColoredShape leaf;
+    private double offset;
+
+    @Setup
+    public void setUp() {
+        int depth = (int) Math.round(Math.log(leaves) / Math.log(fanOut));
+        root = new DocumentGenerator().setGroups(depth, fanOut).generateGroup();
+        ColoredShape shape = root;
+        while (shape instanceof ShapeGroup group) {
+            shape = group.getChildren().get(group.getChildren().size() / 2);
+        }
+        leaf = shape;
+        root.getBoundingBox();
+    }
+
+    @Benchmark
+    public Rectangle2D cached() {
+        return root.getBoundingBox();
+    }
+
+    @Benchmark
+    public Rectangle2D afterLeafMoved() {
+        offset = offset == 0 ? 1 : 0;
+        leaf.move(500 + offset, 500);
+        return root.getBoundingBox();
+    }
+}
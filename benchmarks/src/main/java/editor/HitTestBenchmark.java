@@ -0,0 +1,45 @@
+package editor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// DrawingPanel.findShapeAt at random points of the canvas, as on every
+// click with the Move tool.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Deditor.journal=false", "-Xmx4g"})
+public class HitTestBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int shapes;
+
+    private DrawingPanel panel;
+    private double[] points;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        DocumentGenerator generator = new DocumentGenerator().setCount(shapes);
+        panel = new DrawingPanel();
+        panel.setDocument(generator.generate());
+        Dimension canvas = generator.getCanvasSize();
+        SplittableRandom random = new SplittableRandom(7);
+        points = new double[2 * 4096];
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] = random.nextDouble(canvas.width);
+            points[i + 1] = random.nextDouble(canvas.height);
+        }
+    }
+
+    @Benchmark
+    public ColoredShape findShapeAt() {
+        int i = next;
+        next = (i + 2) & (points.length - 1);
+        return panel.findShapeAt(points[i], points[i + 1]);
+    }
+}
@@ -0,0 +1,62 @@
+package editor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+// One 1920x1080 frame of DrawingPanel.paintComponent into an offscreen
+// image: from the tile cache, and with every tile rendered afresh.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Deditor.journal=false", "-Xmx4g"})
+public class PaintBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int shapes;
+
+    private DrawingPanel cached;
+    private DrawingPanel cold;
+    private BufferedImage frame;
+
+    @Setup
+    public void setUp() {
+        cached = panel();
+        cold = panel();
+        // keeps nothing between frames, so every tile is rendered again
+        cold.setTileCacheBudget(1);
+        frame = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+        paint(cached);
+    }
+
+    private DrawingPanel panel() {
+        DrawingPanel panel = new DrawingPanel();
+        panel.setDocument(new DocumentGenerator().setCount(shapes).generate());
+        panel.setSize(1920, 1080);
+        return panel;
+    }
+
+    private BufferedImage paint(DrawingPanel panel) {
+        Graphics2D g2d = frame.createGraphics();
+        try {
+            g2d.setClip(0, 0, 1920, 1080);
+            panel.paintComponent(g2d);
+        } finally {
+            g2d.dispose();
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public BufferedImage cachedFrame() {
+        return paint(cached);
+    }
+
+    @Benchmark
+    public BufferedImage coldFrame() {
+        return paint(cold);
+    }
+}
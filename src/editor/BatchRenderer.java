@@ -0,0 +1,239 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Headless entry point for nightly jobs: renders documents (.vgd or .svg) to
+// PNG, JPEG and/or SVG without creating any window. Files are processed
+// concurrently on a fixed pool and go through the same GraphicAdapter and
+// ColoredShape.paint code as exports from the editor.
+//
+//   java -cp ... BatchRenderer [-f png,jpeg,svg] [-o dir] [-t threads]
+//        [-s scale] [--size WxH] file-or-directory...
+public class BatchRenderer {
+    private static final List<String> FORMATS = List.of("png", "jpeg", "svg");
+
+    record Options(List<String> formats, Path output, int threads, double scale, Dimension size, List<File> inputs) {
+    }
+
+    private record Result(File input, int shapes, long loadNanos, long renderNanos, long bytes, String error) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BatchRenderer [-f png,jpeg,svg] [-o dir] [-t threads] [-s scale] [--size WxH] file-or-directory...");
+            System.exit(2);
+            return;
+        }
+        Files.createDirectories(options.output());
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads());
+        List<Future<Result>> futures = new ArrayList<>();
+        for (File input : options.inputs()) {
+            futures.add(pool.submit(() -> render(input, options)));
+        }
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> future : futures) {
+            try {
+                Result result = future.get();
+                results.add(result);
+                print(result);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        pool.shutdown();
+        long elapsed = System.nanoTime() - start;
+
+        int failed = 0;
+        long shapes = 0, bytes = 0;
+        for (Result result : results) {
+            if (result.error() != null) {
+                failed++;
+            } else {
+                shapes += result.shapes();
+                bytes += result.bytes();
+            }
+        }
+        double seconds = elapsed / 1e9;
+        System.out.printf(Locale.ROOT, "%d files (%d failed) in %.2f s on %d threads: %.1f files/s, %.0f shapes/s, %.1f MB/s written%n",
+                results.size(), failed, seconds, options.threads(), (results.size() - failed) / seconds,
+                shapes / seconds, bytes / 1e6 / seconds);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static Result render(File input, Options options) {
+        long start = System.nanoTime();
+        try {
+            List<ColoredShape> shapes = load(input);
+            long loaded = System.nanoTime();
+            DocumentSnapshot document = snapshot(shapes, options.size());
+            String name = outputName(input);
+            long bytes = 0;
+            for (String format : options.formats()) {
+                File target = options.output().resolve(name + "." + format).toFile();
+                if (target.getCanonicalFile().equals(input.getCanonicalFile())) {
+                    // never overwrite the input, e.g. svg to svg in place
+                    target = options.output().resolve(name + ".out." + format).toFile();
+                }
+                GraphicAdapter adapter = new GraphicAdapter(document);
+                if (format.equals("svg")) {
+                    adapter.exportToSVG(target.getPath(), SvgExportMode.STREAMING);
+                } else {
+                    // several files at once already keep the cores busy, and
+                    // tiles on the shared export pool would not count
+                    // against -t
+                    int tileThreads = options.threads() > 1 ? 1 : Runtime.getRuntime().availableProcessors();
+                    adapter.exportToImage(target.getPath(), format, options.scale(), tileThreads, (done, total) -> {
+                    });
+                }
+                bytes += target.length();
+            }
+            return new Result(input, shapes.size(), loaded - start, System.nanoTime() - loaded, bytes, null);
+        } catch (Exception | OutOfMemoryError e) {
+            return new Result(input, 0, System.nanoTime() - start, 0, 0, e.toString());
+        }
+    }
+
+    // The input's name without its extension; outputs add their format's.
+    private static String outputName(File input) {
+        return input.getName().replaceFirst("\\.[^.]*$", "");
+    }
+
+    // Two inputs with the same name, e.g. a.vgd and a.svg, or a.vgd in two
+    // directories, would render to the same files from concurrent jobs, and
+    // one would silently overwrite the other. Case is ignored, since the
+    // output directory may be on a case-insensitive file system.
+    private static void checkOutputNames(List<File> inputs) {
+        Map<String, File> seen = new HashMap<>();
+        for (File input : inputs) {
+            File previous = seen.putIfAbsent(outputName(input).toLowerCase(Locale.ROOT), input);
+            if (previous != null) {
+                throw new IllegalArgumentException(previous + " and " + input + " would both be rendered to "
+                        + outputName(input) + ".*; rename one or render them separately");
+            }
+        }
+    }
+
+    static List<ColoredShape> load(File input) throws Exception {
+        if (input.getName().toLowerCase(Locale.ROOT).endsWith(".svg")) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(input), 1 << 16)) {
+                return new SvgStreamReader().read(in);
+            }
+        }
+        return NativeDocument.load(input.toPath());
+    }
+
+    // Without an explicit size the canvas reaches from the origin to the
+    // far edge of the drawing, the way DrawingPanel grows with its content.
+    static DocumentSnapshot snapshot(List<ColoredShape> shapes, Dimension size) {
+        long[] keys = new long[shapes.size()];
+        Rectangle2D extent = new Rectangle2D.Double();
+        for (int i = 0; i < shapes.size(); i++) {
+            keys[i] = i;
+            if (size == null) {
+                extent.add(shapes.get(i).getPaintBounds());
+            }
+        }
+        int width = size != null ? size.width : (int) Math.ceil(Math.max(1, extent.getMaxX()));
+        int height = size != null ? size.height : (int) Math.ceil(Math.max(1, extent.getMaxY()));
+        return new DocumentSnapshot(DocumentVersion.of(shapes, keys), width, height, Color.WHITE);
+    }
+
+    private static void print(Result result) {
+        if (result.error() != null) {
+            System.out.printf(Locale.ROOT, "FAILED %s: %s%n", result.input(), result.error());
+            return;
+        }
+        System.out.printf(Locale.ROOT, "%-40s %9d shapes  load %8.1f ms  render %8.1f ms  %10d bytes%n",
+                result.input().getName(), result.shapes(), result.loadNanos() / 1e6, result.renderNanos() / 1e6, result.bytes());
+    }
+
+    static Options parse(String[] args) {
+        List<String> formats = List.of("png");
+        Path output = Path.of(".");
+        int threads = Runtime.getRuntime().availableProcessors();
+        double scale = 1;
+        Dimension size = null;
+        List<File> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-f", "--format" -> {
+                    formats = Arrays.stream(value(args, ++i, arg).toLowerCase(Locale.ROOT).split(","))
+                            .map(f -> f.equals("jpg") ? "jpeg" : f).distinct().toList();
+                    for (String format : formats) {
+                        if (!FORMATS.contains(format)) {
+                            throw new IllegalArgumentException("Unknown format: " + format);
+                        }
+                    }
+                }
+                case "-o", "--output" -> output = Path.of(value(args, ++i, arg));
+                case "-t", "--threads" -> threads = Math.max(1, Integer.parseInt(value(args, ++i, arg)));
+                case "-s", "--scale" -> scale = Double.parseDouble(value(args, ++i, arg));
+                case "--size" -> {
+                    String[] parts = value(args, ++i, arg).toLowerCase(Locale.ROOT).split("x");
+                    if (parts.length != 2) {
+                        throw new IllegalArgumentException("Size must look like 1920x1080");
+                    }
+                    size = new Dimension(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+                }
+                default -> {
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    File file = new File(arg);
+                    if (file.isDirectory()) {
+                        File[] children = file.listFiles((dir, name) -> {
+                            String lower = name.toLowerCase(Locale.ROOT);
+                            return lower.endsWith("." + NativeDocument.EXTENSION) || lower.endsWith(".svg");
+                        });
+                        if (children != null) {
+                            Arrays.sort(children);
+                            inputs.addAll(Arrays.asList(children));
+                        }
+                    } else {
+                        inputs.add(file);
+                    }
+                }
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input documents given");
+        }
+        checkOutputNames(inputs);
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive");
+        }
+        return new Options(formats, output, threads, scale, size, inputs);
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+}
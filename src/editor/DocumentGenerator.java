@@ -0,0 +1,281 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// Seeded documents for load tests and benchmarks. Everything is drawn from a
+// single SplittableRandom in a fixed order, so the same seed and settings
+// always give the same document, shape for shape.
+//
+//   java -cp ... editor.DocumentGenerator [-n count] [--seed seed]
+//        [--mix rectangle=2,brush=1,...] [--brush vertices] [--groups DxF]
+//        [--size WxH] -o file.vgd|file.svg
+//
+// The same options in -Deditor.generate="..." open the editor with a
+// generated drawing instead of an empty one.
+public class DocumentGenerator {
+    enum Kind {
+        RECTANGLE, ELLIPSE, CIRCLE, LINE, ARC, BRUSH, POLYGON, GROUP
+    }
+
+    private final Map<Kind, Double> weights = new EnumMap<>(Kind.class);
+    private int count = 1000;
+    private long seed = 42;
+    private int brushVertices = 16;
+    private int groupDepth = 2;
+    private int groupFanOut = 4;
+    private int width, height;
+
+    // Every leaf type is equally likely by default; groups only appear when
+    // given a weight.
+    public DocumentGenerator() {
+        for (Kind kind : Kind.values()) {
+            weights.put(kind, kind == Kind.GROUP ? 0.0 : 1.0);
+        }
+    }
+
+    public DocumentGenerator setCount(int count) {
+        this.count = count;
+        return this;
+    }
+
+    public DocumentGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public DocumentGenerator setWeight(Kind kind, double weight) {
+        if (!(weight >= 0)) {
+            throw new IllegalArgumentException("Weight must not be negative: " + weight);
+        }
+        weights.put(kind, weight);
+        return this;
+    }
+
+    public DocumentGenerator setBrushVertices(int vertices) {
+        this.brushVertices = Math.max(2, vertices);
+        return this;
+    }
+
+    public DocumentGenerator setGroups(int depth, int fanOut) {
+        this.groupDepth = Math.max(1, depth);
+        this.groupFanOut = Math.max(1, fanOut);
+        return this;
+    }
+
+    // Without an explicit size the canvas grows with the shape count, so the
+    // density, and with it the cost per tile or hit test, stays comparable.
+    public DocumentGenerator setCanvasSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    public Dimension getCanvasSize() {
+        if (width > 0 && height > 0) {
+            return new Dimension(width, height);
+        }
+        int side = Math.max(1024, (int) Math.sqrt(count * 400.0));
+        return new Dimension(side, side);
+    }
+
+    // count top-level shapes; a group counts once however large its tree is.
+    public List<ColoredShape> generate() {
+        SplittableRandom random = new SplittableRandom(seed);
+        Rectangle canvas = new Rectangle(getCanvasSize());
+        List<ColoredShape> shapes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shapes.add(shape(pick(random, true), canvas, random));
+        }
+        return shapes;
+    }
+
+    // A single tree of groupDepth levels with groupFanOut children per group,
+    // independent of the group weight.
+    public ShapeGroup generateGroup() {
+        return group(groupDepth, new Rectangle(getCanvasSize()), new SplittableRandom(seed));
+    }
+
+    public void fill(DrawingPanel panel) {
+        panel.setDocument(generate());
+    }
+
+    public void write(Path path) throws Exception {
+        List<ColoredShape> shapes = generate();
+        if (path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".svg")) {
+            DocumentSnapshot document = BatchRenderer.snapshot(shapes, getCanvasSize());
+            new GraphicAdapter(document).exportToSVG(path.toString(), SvgExportMode.STREAMING);
+        } else {
+            NativeDocument.save(shapes, path);
+        }
+    }
+
+    private Kind pick(SplittableRandom random, boolean groups) {
+        double total = 0;
+        for (Map.Entry<Kind, Double> entry : weights.entrySet()) {
+            if (groups || entry.getKey() != Kind.GROUP) {
+                total += entry.getValue();
+            }
+        }
+        if (total == 0) {
+            return Kind.RECTANGLE;
+        }
+        double r = random.nextDouble(total);
+        Kind last = Kind.RECTANGLE;
+        for (Map.Entry<Kind, Double> entry : weights.entrySet()) {
+            if (entry.getValue() == 0 || (!groups && entry.getKey() == Kind.GROUP)) {
+                continue;
+            }
+            last = entry.getKey();
+            r -= entry.getValue();
+            if (r < 0) {
+                break;
+            }
+        }
+        return last;
+    }
+
+    private ColoredShape shape(Kind kind, Rectangle area, SplittableRandom random) {
+        if (kind == Kind.GROUP) {
+            return group(groupDepth, area, random);
+        }
+        double x = area.x + random.nextDouble(Math.max(1, area.width - 40));
+        double y = area.y + random.nextDouble(Math.max(1, area.height - 40));
+        double w = 2 + random.nextDouble(38);
+        double h = 2 + random.nextDouble(38);
+        ColoredShape shape = switch (kind) {
+            case RECTANGLE -> new RectangleShape(x, y, w, h);
+            case ELLIPSE -> new EllipseShape(x, y, w, h, false);
+            case CIRCLE -> new EllipseShape(x, y, w, w, true);
+            case LINE -> new LineShape(x, y, x + w, y + h);
+            case ARC -> {
+                // arcs are half ellipses that open up or down; ArcShape has no other angles
+                ArcShape arc = new ArcShape(x, y, w, h, 0, 180);
+                arc.setFlipped(random.nextBoolean());
+                yield arc;
+            }
+            case BRUSH -> {
+                BrushShape brush = new BrushShape(x, y);
+                for (int p = 1; p < brushVertices; p++) {
+                    brush.addPoint(x + p * w / brushVertices, y + random.nextDouble(h));
+                }
+                yield brush;
+            }
+            default -> {
+                PolygonShape polygon = new PolygonShape();
+                int corners = 3 + random.nextInt(6);
+                for (int p = 0; p < corners; p++) {
+                    double angle = 2 * Math.PI * p / corners;
+                    polygon.addPoint((int) (x + w / 2 * (1 + Math.cos(angle))), (int) (y + h / 2 * (1 + Math.sin(angle))));
+                }
+                polygon.closePolygon();
+                yield polygon;
+            }
+        };
+        shape.setColor(new Color(random.nextInt(0x1000000)));
+        shape.setLineSize(1 + random.nextInt(3));
+        return shape;
+    }
+
+    // Members stay close together, the way shapes get grouped in a drawing:
+    // each group gets a square inside its parent's, sized for its leaves.
+    private ShapeGroup group(int depth, Rectangle area, SplittableRandom random) {
+        int side = (int) Math.min(Math.min(area.width, area.height), 40 + 40 * Math.pow(groupFanOut, depth / 2.0));
+        Rectangle cluster = new Rectangle(area.x + random.nextInt(area.width - side + 1),
+                area.y + random.nextInt(area.height - side + 1), side, side);
+        ShapeGroup group = new ShapeGroup();
+        for (int i = 0; i < groupFanOut; i++) {
+            group.add(depth > 1 ? group(depth - 1, cluster, random) : shape(pick(random, false), cluster, random));
+        }
+        group.setTransform(AffineTransform.getTranslateInstance(random.nextDouble(10), random.nextDouble(10)));
+        return group;
+    }
+
+    static DocumentGenerator parse(String[] args) {
+        DocumentGenerator generator = new DocumentGenerator();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-n", "--count" -> generator.setCount(Integer.parseInt(value(args, ++i, arg)));
+                case "--seed" -> generator.setSeed(Long.parseLong(value(args, ++i, arg)));
+                case "--brush" -> generator.setBrushVertices(Integer.parseInt(value(args, ++i, arg)));
+                case "--mix" -> {
+                    for (Kind kind : Kind.values()) {
+                        generator.setWeight(kind, 0);
+                    }
+                    for (String part : value(args, ++i, arg).split(",")) {
+                        String[] pair = part.split("=");
+                        Kind kind;
+                        try {
+                            kind = Kind.valueOf(pair[0].trim().toUpperCase(Locale.ROOT));
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException("Unknown shape type: " + pair[0]);
+                        }
+                        generator.setWeight(kind, pair.length > 1 ? Double.parseDouble(pair[1]) : 1);
+                    }
+                }
+                case "--groups" -> {
+                    int[] pair = pair(value(args, ++i, arg), "Groups must look like 3x4 (depth x fan-out)");
+                    generator.setGroups(pair[0], pair[1]);
+                }
+                case "--size" -> {
+                    int[] pair = pair(value(args, ++i, arg), "Size must look like 1920x1080");
+                    generator.setCanvasSize(pair[0], pair[1]);
+                }
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return generator;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private static int[] pair(String value, String message) {
+        String[] parts = value.toLowerCase(Locale.ROOT).split("x");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException(message);
+        }
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        List<String> options = new ArrayList<>(List.of(args));
+        Path output = null;
+        DocumentGenerator generator;
+        try {
+            for (int i = options.indexOf("-o"); i >= 0; i = options.indexOf("-o")) {
+                options.remove(i);
+                if (i >= options.size()) {
+                    throw new IllegalArgumentException("Missing value for -o");
+                }
+                output = Path.of(options.remove(i));
+            }
+            if (output == null) {
+                throw new IllegalArgumentException("No output file given");
+            }
+            generator = parse(options.toArray(String[]::new));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: DocumentGenerator [-n count] [--seed seed] [--mix rectangle=2,brush=1,...] "
+                    + "[--brush vertices] [--groups DxF] [--size WxH] -o file.vgd|file.svg");
+            System.exit(2);
+            return;
+        }
+        long start = System.nanoTime();
+        generator.write(output);
+        System.out.printf(Locale.ROOT, "%s: %d shapes in %.2f s%n", output, generator.count, (System.nanoTime() - start) / 1e9);
+    }
+}
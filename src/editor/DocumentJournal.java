@@ -0,0 +1,461 @@
+package editor;
+
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.zip.CRC32;
+
+// Autosave and crash recovery. DrawingPanel reports every change it makes to
+// the top-level shape list - whether from executing, undoing or redoing a
+// command - and the journal appends it to disk as an entry keyed by the
+// shape's z-order key in ShapeIndex, so replaying the entries also restores
+// the stacking order. The EDT only encodes the change and queues
+// it; a writer thread appends entries in batches and keeps a shadow copy of
+// the encoded document, which it periodically compacts into a snapshot in
+// NativeDocument format so the journal never grows without bound.
+//
+// Files in the journal directory, for generation g:
+//   snapshot-g.vgd   the document when generation g started
+//   journal-g.log    header listing the snapshot's shape ids, then entries
+// A clean shutdown deletes both; finding them at startup means a crash.
+class DocumentJournal {
+    static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("editor.journalDir",
+            Paths.get(System.getProperty("user.home"), ".vector-editor", "journal").toString()));
+    private static final int MAGIC = 0x56474A31; // "VGJ1"
+    private static final short VERSION = 1;
+    private static final long BATCH_MILLIS = Long.getLong("editor.journalBatchMillis", 250);
+    private static final int COMPACT_EVERY = Integer.getInteger("editor.journalCompactEvery", 10_000);
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte REPLACE = 3;
+    private static final byte TRANSFORM = 4;
+
+    private static final Object CLOSE = new Object();
+    private static final Object STOP = new Object();
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean failed;
+
+    // EDT only
+    private final Map<ColoredShape, Long> ids = new IdentityHashMap<>();
+
+    // writer thread only
+    private final TreeMap<Long, NativeDocument.Encoded> shadow = new TreeMap<>();
+    private long generation;
+    private FileChannel journal;
+    private int sinceSnapshot;
+
+    private record Entry(byte op, long id, NativeDocument.Encoded shape, double[] matrix) {
+    }
+
+    private record Reset(List<Long> ids, List<NativeDocument.Encoded> shapes) {
+    }
+
+    private DocumentJournal(Path directory, FileChannel lockChannel, FileLock lock) {
+        this.directory = directory;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+        writer = new Thread(this::run, "document-journal");
+        writer.setDaemon(true);
+        // continue numbering after whatever a crashed session left behind, so
+        // the first compaction supersedes it
+        generation = latestGeneration();
+    }
+
+    // Returns null when journaling is switched off or another editor
+    // instance already owns the directory.
+    public static DocumentJournal open(Path directory) {
+        if ("false".equals(System.getProperty("editor.journal"))) {
+            return null;
+        }
+        try {
+            Files.createDirectories(directory);
+            FileChannel channel = FileChannel.open(directory.resolve("lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+                return null;
+            }
+            return new DocumentJournal(directory, channel, lock);
+        } catch (IOException e) {
+            System.err.println("Journal disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Rebuilds the document left behind by a session that did not shut down
+    // cleanly, or returns null if there is nothing to recover. Call before
+    // the journal is started.
+    public List<ColoredShape> recover() throws IOException {
+        long latest = generation;
+        if (latest < 0) {
+            return null;
+        }
+        Path snapshotFile = directory.resolve("snapshot-" + latest + ".vgd");
+        List<ColoredShape> snapshot = Files.exists(snapshotFile) ? NativeDocument.load(snapshotFile) : List.of();
+        TreeMap<Long, ColoredShape> document = new TreeMap<>();
+        Path journalFile = directory.resolve("journal-" + latest + ".log");
+        if (!Files.exists(journalFile)) {
+            // crashed right after compacting; the snapshot is complete
+            return new ArrayList<>(snapshot);
+        }
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.remaining() < 20 || in.getInt() != MAGIC || in.getShort() > VERSION) {
+            return new ArrayList<>(snapshot);
+        }
+        in.getShort();
+        in.getLong();
+        int count = in.getInt();
+        if (count != snapshot.size() || in.remaining() < count * 8L) {
+            return new ArrayList<>(snapshot);
+        }
+        for (ColoredShape shape : snapshot) {
+            document.put(in.getLong(), shape);
+        }
+        CRC32 crc = new CRC32();
+        while (in.remaining() >= 4) {
+            int length = in.getInt();
+            if (length < 9 || in.remaining() < length + 4) {
+                break; // torn write at the moment of the crash
+            }
+            ByteBuffer entry = in.slice(in.position(), length);
+            in.position(in.position() + length);
+            crc.reset();
+            crc.update(entry.duplicate());
+            if ((int) crc.getValue() != in.getInt()) {
+                break;
+            }
+            byte op = entry.get();
+            long id = entry.getLong();
+            switch (op) {
+                case ADD, REPLACE -> {
+                    entry.position(entry.position() + 16);
+                    document.put(id, NativeDocument.decode(entry));
+                }
+                case REMOVE -> document.remove(id);
+                case TRANSFORM -> {
+                    entry.position(entry.position() + 16);
+                    double[] matrix = new double[6];
+                    for (int i = 0; i < 6; i++) {
+                        matrix[i] = entry.getDouble();
+                    }
+                    ColoredShape shape = document.get(id);
+                    if (shape instanceof LazyShape lazy) {
+                        shape = lazy.resolve();
+                        document.put(id, shape);
+                    }
+                    if (shape instanceof ShapeGroup group) {
+                        group.setTransform(new AffineTransform(matrix));
+                    }
+                }
+                default -> {
+                    return new ArrayList<>(document.values());
+                }
+            }
+        }
+        return new ArrayList<>(document.values());
+    }
+
+    // Starts journaling from the given document; called once by DrawingPanel.
+    void start(List<ColoredShape> document, ToLongFunction<ColoredShape> zOrder) {
+        documentReplaced(document, zOrder);
+        writer.start();
+        // A kill or logout still gets the queued entries written; only
+        // close() marks the shutdown as clean.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            queue.add(STOP);
+            try {
+                writer.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
+
+    // Ends the session cleanly: pending entries are dropped with the files.
+    public void close() {
+        queue.add(CLOSE);
+    }
+
+    void documentReplaced(List<ColoredShape> document, ToLongFunction<ColoredShape> zOrder) {
+        ids.clear();
+        List<Long> order = new ArrayList<>(document.size());
+        List<NativeDocument.Encoded> encoded = new ArrayList<>(document.size());
+        for (ColoredShape shape : document) {
+            long id = zOrder.applyAsLong(shape);
+            ids.put(shape, id);
+            order.add(id);
+            encoded.add(NativeDocument.encode(shape));
+        }
+        submit(new Reset(order, encoded));
+    }
+
+    void shapeAdded(ColoredShape shape, long zOrder) {
+        ids.put(shape, zOrder);
+        submit(new Entry(ADD, zOrder, NativeDocument.encode(shape), null));
+    }
+
+    void shapeRemoved(ColoredShape shape) {
+        Long id = ids.remove(shape);
+        if (id != null) {
+            submit(new Entry(REMOVE, id, null, null));
+        }
+    }
+
+    void shapeChanged(ColoredShape shape) {
+        Long id = ids.get(shape);
+        if (id == null) {
+            return;
+        }
+        if (shape instanceof ShapeGroup group) {
+            // A top-level group only ever changes through its transform, so
+            // there is no need to encode the whole subtree again. The entry
+            // carries the new bounds with no record.
+            double[] matrix = new double[6];
+            group.getTransform().getMatrix(matrix);
+            NativeDocument.Encoded bounds = NativeDocument.encodeBounds(group);
+            submit(new Entry(TRANSFORM, id, bounds, matrix));
+        } else {
+            submit(new Entry(REPLACE, id, NativeDocument.encode(shape), null));
+        }
+    }
+
+    // The same shape in another form, e.g. a LazyShape and its decoded copy.
+    void shapeReplaced(ColoredShape shape, ColoredShape replacement) {
+        Long id = ids.remove(shape);
+        if (id != null) {
+            ids.put(replacement, id);
+        }
+    }
+
+    private void submit(Object item) {
+        if (!failed) {
+            queue.add(item);
+        }
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>();
+        try {
+            while (true) {
+                Object next = queue.take();
+                batch.add(next);
+                // let a burst of edits pile up into one write
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_MILLIS);
+                long left;
+                while (next != CLOSE && next != STOP && (left = deadline - System.nanoTime()) > 0) {
+                    next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch);
+                if (!process(batch)) {
+                    return;
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            queue.clear();
+            System.err.println("Journal disabled: " + e);
+        }
+    }
+
+    // Returns false once the journal has shut down.
+    private boolean process(List<Object> batch) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(1 << 16);
+        int entries = 0;
+        for (Object item : batch) {
+            if (item == CLOSE) {
+                shutdown(true);
+                return false;
+            } else if (item == STOP) {
+                append(out);
+                shutdown(false);
+                return false;
+            } else if (item instanceof Reset reset) {
+                shadow.clear();
+                for (int i = 0; i < reset.ids().size(); i++) {
+                    shadow.put(reset.ids().get(i), reset.shapes().get(i));
+                }
+                // everything before the reset is in the new snapshot
+                out.clear();
+                entries = 0;
+                compact();
+            } else if (item instanceof Entry entry) {
+                apply(entry);
+                out = serialize(entry, out);
+                entries++;
+            }
+        }
+        append(out);
+        sinceSnapshot += entries;
+        if (sinceSnapshot >= COMPACT_EVERY) {
+            compact();
+        }
+        return true;
+    }
+
+    private void apply(Entry entry) {
+        switch (entry.op()) {
+            case ADD, REPLACE -> shadow.put(entry.id(), entry.shape());
+            case REMOVE -> shadow.remove(entry.id());
+            case TRANSFORM -> {
+                NativeDocument.Encoded old = shadow.get(entry.id());
+                if (old != null) {
+                    NativeDocument.Encoded b = entry.shape();
+                    shadow.put(entry.id(), new NativeDocument.Encoded(
+                            NativeDocument.withTransform(old.record(), new AffineTransform(entry.matrix())),
+                            b.minX(), b.minY(), b.maxX(), b.maxY()));
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer serialize(Entry entry, ByteBuffer out) {
+        int payload = switch (entry.op()) {
+            case ADD, REPLACE -> 16 + entry.shape().record().remaining();
+            case TRANSFORM -> 16 + 48;
+            default -> 0;
+        };
+        int length = 9 + payload;
+        if (out.remaining() < length + 8) {
+            out = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + length + 8)).put(out.flip());
+        }
+        out.putInt(length);
+        int start = out.position();
+        out.put(entry.op()).putLong(entry.id());
+        if (payload > 0) {
+            NativeDocument.Encoded shape = entry.shape();
+            out.putFloat(shape.minX()).putFloat(shape.minY()).putFloat(shape.maxX()).putFloat(shape.maxY());
+            if (entry.op() == TRANSFORM) {
+                for (double m : entry.matrix()) {
+                    out.putDouble(m);
+                }
+            } else {
+                out.put(shape.record().duplicate());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out.slice(start, length));
+        out.putInt((int) crc.getValue());
+        return out;
+    }
+
+    private void append(ByteBuffer out) throws IOException {
+        if (out.position() == 0 || journal == null) {
+            return;
+        }
+        out.flip();
+        while (out.hasRemaining()) {
+            journal.write(out);
+        }
+        journal.force(false);
+        out.clear();
+    }
+
+    // Starts a new generation from the shadow document. The new snapshot is
+    // complete before the new journal exists, and the old files go last, so a
+    // crash at any point leaves a consistent latest generation.
+    private void compact() throws IOException {
+        long next = generation + 1;
+        NativeDocument.saveEncoded(shadow.values(), directory.resolve("snapshot-" + next + ".vgd"));
+        ByteBuffer header = ByteBuffer.allocate(20 + shadow.size() * 8);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(next).putInt(shadow.size());
+        for (long id : shadow.keySet()) {
+            header.putLong(id);
+        }
+        header.flip();
+        FileChannel channel = FileChannel.open(directory.resolve("journal-" + next + ".log"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(false);
+        if (journal != null) {
+            journal.close();
+        }
+        journal = channel;
+        deleteGenerationsBefore(next);
+        generation = next;
+        sinceSnapshot = 0;
+    }
+
+    private void shutdown(boolean clean) throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        if (clean) {
+            deleteGenerationsBefore(Long.MAX_VALUE);
+        }
+        lock.release();
+        lockChannel.close();
+    }
+
+    private void deleteGenerationsBefore(long limit) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{snapshot,journal}-*")) {
+            for (Path file : files) {
+                if (generationOf(file) < limit) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // still mapped on a platform that forbids deleting it; the next compaction retries
+                    }
+                }
+            }
+        }
+    }
+
+    private long latestGeneration() {
+        long latest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{snapshot,journal}-*")) {
+            for (Path file : files) {
+                latest = Math.max(latest, generationOf(file));
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return latest;
+    }
+
+    private static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        int dash = name.indexOf('-');
+        int dot = name.indexOf('.', dash);
+        try {
+            return Long.parseLong(name.substring(dash + 1, dot < 0 ? name.length() : dot));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
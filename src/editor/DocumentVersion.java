@@ -0,0 +1,190 @@
+package editor;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// One immutable version of the document: the top-level shapes in a persistent
+// AVL tree keyed by z-order key. with() and without() copy only the nodes on
+// the path to the key and share everything else with the version they start
+// from, so old versions stay valid and holding on to one costs nothing. The
+// shapes in it are frozen read-only copies, which makes a version safe to
+// read from any thread while the editor keeps changing the live model.
+final class DocumentVersion implements Iterable<ColoredShape> {
+    static final DocumentVersion EMPTY = new DocumentVersion(null);
+
+    private static final class Node {
+        final long key;
+        final ColoredShape shape;
+        final Node left, right;
+        final int height;
+        final int size;
+
+        Node(long key, ColoredShape shape, Node left, Node right) {
+            this.key = key;
+            this.shape = shape;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+    private final Node root;
+
+    private DocumentVersion(Node root) {
+        this.root = root;
+    }
+
+    // Builds a balanced tree in linear time from shapes already in key order.
+    static DocumentVersion of(List<ColoredShape> shapes, long[] keys) {
+        return new DocumentVersion(build(shapes, keys, 0, shapes.size()));
+    }
+
+    private static Node build(List<ColoredShape> shapes, long[] keys, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        return new Node(keys[mid], shapes.get(mid), build(shapes, keys, from, mid), build(shapes, keys, mid + 1, to));
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    int height() {
+        return height(root);
+    }
+
+    public ColoredShape get(long key) {
+        Node node = root;
+        while (node != null) {
+            if (key < node.key) {
+                node = node.left;
+            } else if (key > node.key) {
+                node = node.right;
+            } else {
+                return node.shape;
+            }
+        }
+        return null;
+    }
+
+    public DocumentVersion with(long key, ColoredShape shape) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Not a z-order key: " + key);
+        }
+        return new DocumentVersion(put(root, key, shape));
+    }
+
+    public DocumentVersion without(long key) {
+        Node updated = remove(root, key);
+        return updated == root ? this : new DocumentVersion(updated);
+    }
+
+    // Bottom to top, the order shapes are painted in.
+    @Override
+    public Iterator<ColoredShape> iterator() {
+        return new Iterator<>() {
+            private final ArrayDeque<Node> path = new ArrayDeque<>();
+
+            {
+                descend(root);
+            }
+
+            private void descend(Node node) {
+                for (; node != null; node = node.left) {
+                    path.push(node);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public ColoredShape next() {
+                if (path.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node node = path.pop();
+                descend(node.right);
+                return node.shape;
+            }
+        };
+    }
+
+    private static Node put(Node node, long key, ColoredShape shape) {
+        if (node == null) {
+            return new Node(key, shape, null, null);
+        }
+        if (key < node.key) {
+            return balance(node.key, node.shape, put(node.left, key, shape), node.right);
+        } else if (key > node.key) {
+            return balance(node.key, node.shape, node.left, put(node.right, key, shape));
+        }
+        return new Node(key, shape, node.left, node.right);
+    }
+
+    private static Node remove(Node node, long key) {
+        if (node == null) {
+            return null;
+        }
+        if (key < node.key) {
+            Node left = remove(node.left, key);
+            return left == node.left ? node : balance(node.key, node.shape, left, node.right);
+        } else if (key > node.key) {
+            Node right = remove(node.right, key);
+            return right == node.right ? node : balance(node.key, node.shape, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        }
+        Node successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.key, successor.shape, node.left, remove(node.right, successor.key));
+    }
+
+    private static Node balance(long key, ColoredShape shape, Node left, Node right) {
+        int skew = height(left) - height(right);
+        if (skew > 1) {
+            if (height(left.left) < height(left.right)) {
+                left = rotateLeft(left.key, left.shape, left.left, left.right);
+            }
+            return rotateRight(key, shape, left, right);
+        } else if (skew < -1) {
+            if (height(right.right) < height(right.left)) {
+                right = rotateRight(right.key, right.shape, right.left, right.right);
+            }
+            return rotateLeft(key, shape, left, right);
+        }
+        return new Node(key, shape, left, right);
+    }
+
+    private static Node rotateRight(long key, ColoredShape shape, Node left, Node right) {
+        return new Node(left.key, left.shape, left.left, new Node(key, shape, left.right, right));
+    }
+
+    private static Node rotateLeft(long key, ColoredShape shape, Node left, Node right) {
+        return new Node(right.key, right.shape, new Node(key, shape, left, right.left), right.right);
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
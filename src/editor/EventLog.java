@@ -0,0 +1,252 @@
+package editor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Fixed-size, lock-free record of recent editor events. A producer claims a
+// slot with one atomic increment and fills preallocated arrays, so logging
+// never blocks, allocates or touches the disk on the EDT. A daemon thread
+// drains new entries into a rotating log file, and dump() writes whatever the
+// ring still holds, e.g. into a bug report after a hang.
+//
+// Each slot carries a version: odd while its entry is being written and
+// 2 * (sequence + 1) once entry number sequence is complete. Readers check it
+// before and after copying an entry, and skip entries that a producer one lap
+// ahead overwrote in the meantime.
+final class EventLog {
+    enum Type {
+        COMMAND_EXECUTED("undo"),
+        COMMAND_MERGED("undo"),
+        UNDO("undo"),
+        REDO("redo");
+
+        // what the value of an entry of this type counts
+        final String value;
+
+        Type(String value) {
+            this.value = value;
+        }
+    }
+
+    static final EventLog EVENTS = new EventLog(Integer.getInteger("editor.eventLogCapacity", 1 << 13));
+    static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("editor.logDir",
+            Paths.get(System.getProperty("user.home"), ".vector-editor", "logs").toString()));
+    private static final long MAX_LOG_BYTES = Long.getLong("editor.logMaxBytes", 4L << 20);
+    private static final int LOG_FILES = 4;
+    private static final Type[] TYPES = Type.values();
+
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLongArray versions;
+    private final long[] times;
+    private final byte[] types;
+    private final Class<?>[] sources;
+    private final long[] shapes;
+    private final long[] values;
+    // System.nanoTime() and the wall clock at the same moment, so entries
+    // can be timestamped with one nanoTime() call
+    private final long originNanos = System.nanoTime();
+    private final long originMillis = System.currentTimeMillis();
+    private volatile boolean closing;
+
+    private record Entry(long sequence, long time, Type type, Class<?> source, long shape, long value) {
+    }
+
+    EventLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        versions = new AtomicLongArray(size);
+        times = new long[size];
+        types = new byte[size];
+        sources = new Class<?>[size];
+        shapes = new long[size];
+        values = new long[size];
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    // shape is the shape's z-order key (as in the journal), -1 for none.
+    void record(Type type, Class<?> source, long shape, long value) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) sequence & mask;
+        versions.set(slot, 2 * sequence + 1);
+        VarHandle.storeStoreFence();
+        times[slot] = System.nanoTime();
+        types[slot] = (byte) type.ordinal();
+        sources[slot] = source;
+        shapes[slot] = shape;
+        values[slot] = value;
+        versions.setRelease(slot, 2 * sequence + 2);
+    }
+
+    // Entry number sequence, or null if it is not complete yet or has
+    // already been overwritten; the slot's version tells those apart.
+    private Entry read(long sequence) {
+        int slot = (int) sequence & mask;
+        long version = versions.getAcquire(slot);
+        if (version != 2 * sequence + 2) {
+            return null;
+        }
+        Entry entry = new Entry(sequence, times[slot], TYPES[types[slot]], sources[slot], shapes[slot], values[slot]);
+        VarHandle.loadLoadFence();
+        return versions.get(slot) == version ? entry : null;
+    }
+
+    // Writes every entry the ring still holds, oldest first.
+    void dump(Writer out) throws IOException {
+        long end = next.get();
+        long start = Math.max(0, end - capacity());
+        out.write("# " + (end - start) + " of " + end + " events since " + Instant.ofEpochMilli(originMillis) + "\n");
+        for (long sequence = start; sequence < end; sequence++) {
+            Entry entry = read(sequence);
+            if (entry != null) {
+                write(out, entry);
+            }
+        }
+    }
+
+    void dump(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            dump(out);
+        }
+    }
+
+    private void write(Writer out, Entry entry) throws IOException {
+        long nanos = entry.time() - originNanos;
+        Instant time = Instant.ofEpochMilli(originMillis).plusNanos(nanos);
+        StringBuilder line = new StringBuilder(96);
+        line.append(time).append(' ').append(entry.type());
+        if (entry.source() != null) {
+            line.append(' ').append(entry.source().getSimpleName());
+        }
+        if (entry.shape() >= 0) {
+            line.append(" shape=").append(entry.shape());
+        }
+        line.append(' ').append(entry.type().value).append('=').append(entry.value()).append('\n');
+        out.write(line.toString());
+    }
+
+    // Starts the daemon thread that appends new entries to events.log in
+    // directory, rolling it over to events.log.1 ... when it grows too large.
+    // At exit it gets one last pass, so the final events reach the file.
+    void startWriter(Path directory) {
+        Thread writer = new Thread(() -> drain(directory), "event-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            closing = true;
+            LockSupport.unpark(writer);
+            try {
+                writer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
+
+    private void drain(Path directory) {
+        long sequence = Math.max(0, next.get() - capacity());
+        try (RotatingLog log = new RotatingLog(directory)) {
+            while (true) {
+                boolean last = closing;
+                long end = next.get();
+                while (sequence < end) {
+                    Entry entry = read(sequence);
+                    if (entry != null) {
+                        write(log, entry);
+                        sequence++;
+                    } else if (end - sequence > capacity()
+                            || versions.get((int) sequence & mask) > 2 * sequence + 2) {
+                        // lapped while we were asleep
+                        long resume = Math.max(sequence + 1, next.get() - capacity());
+                        log.write("# " + (resume - sequence) + " events dropped\n");
+                        sequence = resume;
+                    } else {
+                        // still being written
+                        break;
+                    }
+                }
+                log.flush();
+                if (last) {
+                    return;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+            }
+        } catch (IOException e) {
+            System.err.println("Event log disabled: " + e.getMessage());
+        }
+    }
+
+    private static final class RotatingLog extends Writer {
+        private final Path directory;
+        private Writer out;
+        private long bytes;
+
+        RotatingLog(Path directory) throws IOException {
+            this.directory = directory;
+            Files.createDirectories(directory);
+            open();
+        }
+
+        private void open() throws IOException {
+            Path file = directory.resolve("events.log");
+            bytes = Files.exists(file) ? Files.size(file) : 0;
+            out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            if (bytes >= MAX_LOG_BYTES) {
+                rotate();
+            }
+            out.write(buffer, offset, length);
+            bytes += length;
+        }
+
+        @Override
+        public void write(String text) throws IOException {
+            if (bytes >= MAX_LOG_BYTES) {
+                rotate();
+            }
+            out.write(text);
+            bytes += text.length();
+        }
+
+        private void rotate() throws IOException {
+            out.close();
+            for (int i = LOG_FILES - 1; i > 0; i--) {
+                Path older = directory.resolve(i == 1 ? "events.log" : "events.log." + (i - 1));
+                if (Files.exists(older)) {
+                    Files.move(older, directory.resolve("events.log." + i), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            open();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package editor;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs exports on a background thread, one after another in the order they
+// were queued. Each job works on a DocumentSnapshot taken when it was queued,
+// so the user can keep editing meanwhile. A small window lists the queued and
+// running jobs with a progress bar and a cancel button each.
+class ExportQueue {
+    interface Task {
+        // Writes the export to file, reading shapes through job.track() so
+        // that progress is reported and cancellation is noticed.
+        void run(Job job, File file) throws Exception;
+    }
+
+    private final JFrame frame;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "export");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private JDialog window;
+    private JPanel rows;
+
+    public ExportQueue(JFrame frame) {
+        this.frame = frame;
+    }
+
+    // Queues an export to target. The task writes to a temporary file next
+    // to it that replaces target only once the task has finished, so a
+    // cancelled or failed export leaves no partial file behind.
+    public Job submit(File target, Task task) {
+        Job job = new Job(target, task);
+        JPanel row = new JPanel(new BorderLayout(8, 0));
+        row.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+        JLabel label = new JLabel(target.getName());
+        label.setPreferredSize(new Dimension(160, label.getPreferredSize().height));
+        JProgressBar bar = new JProgressBar(0, 100);
+        bar.setStringPainted(true);
+        bar.setString("Queued");
+        JButton button = new JButton("Cancel");
+        button.addActionListener(e -> {
+            if (job.isDone()) {
+                removeRow(row);
+            } else {
+                job.cancel(true);
+            }
+        });
+        row.add(label, BorderLayout.WEST);
+        row.add(bar, BorderLayout.CENTER);
+        row.add(button, BorderLayout.EAST);
+
+        job.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                bar.setValue((Integer) e.getNewValue());
+                bar.setString(null);
+            } else if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+                button.setText("Clear");
+                if (job.isCancelled()) {
+                    bar.setString("Cancelled");
+                    return;
+                }
+                try {
+                    job.get();
+                    bar.setValue(100);
+                    bar.setString("Saved");
+                } catch (Exception ex) {
+                    Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+                    cause.printStackTrace();
+                    bar.setString("Failed");
+                    JOptionPane.showMessageDialog(frame, "Error exporting " + target.getName() + ": " + cause.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+        addRow(row);
+        executor.execute(job);
+        return job;
+    }
+
+    private void addRow(JPanel row) {
+        if (window == null) {
+            window = new JDialog(frame, "Exports", false);
+            rows = new JPanel();
+            rows.setLayout(new BoxLayout(rows, BoxLayout.Y_AXIS));
+            window.add(new JScrollPane(rows), BorderLayout.CENTER);
+            window.setDefaultCloseOperation(WindowConstants.HIDE_ON_CLOSE);
+        }
+        rows.add(row);
+        window.pack();
+        window.setSize(Math.max(window.getWidth(), 420), Math.min(window.getHeight(), 320));
+        if (!window.isVisible()) {
+            window.setLocationRelativeTo(frame);
+            window.setVisible(true);
+        }
+    }
+
+    private void removeRow(JPanel row) {
+        rows.remove(row);
+        if (rows.getComponentCount() == 0) {
+            window.setVisible(false);
+        } else {
+            rows.revalidate();
+            rows.repaint();
+        }
+    }
+
+    static class Job extends SwingWorker<Void, Void> {
+        private final File target;
+        private final Task task;
+
+        Job(File target, Task task) {
+            this.target = target;
+            this.task = task;
+        }
+
+        public File getTarget() {
+            return target;
+        }
+
+        @Override
+        protected Void doInBackground() throws Exception {
+            Path destination = target.toPath().toAbsolutePath();
+            Path temp = Files.createTempFile(destination.getParent(), destination.getFileName().toString(), ".tmp");
+            try {
+                task.run(this, temp.toFile());
+                checkCancelled();
+                try {
+                    Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return null;
+        }
+
+        // Reports done out of total units of work, e.g. shapes or rows.
+        public void progress(long done, long total) {
+            checkCancelled();
+            setProgress(total <= 0 ? 0 : (int) Math.min(99, done * 100 / total));
+        }
+
+        public void checkCancelled() {
+            if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Export of " + target.getName() + " cancelled");
+            }
+        }
+
+        // Passes the shapes through unchanged, reporting progress as they are
+        // consumed and stopping the export once it is cancelled.
+        public Iterable<ColoredShape> track(Iterable<ColoredShape> shapes, int count) {
+            return () -> new Iterator<>() {
+                private final Iterator<ColoredShape> it = shapes.iterator();
+                private int done;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public ColoredShape next() {
+                    if ((++done & 255) == 0) {
+                        progress(done, count);
+                    }
+                    return it.next();
+                }
+            };
+        }
+    }
+}
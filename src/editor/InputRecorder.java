@@ -0,0 +1,217 @@
+package editor;
+
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Records the raw mouse events DrawingPanel's listeners receive, together
+// with the tool, color and stroke width they were handled with, so that
+// InputReplay can play the session back against a headless panel. Toolbar
+// actions that do not go through the mouse listeners (undo, grouping, ...)
+// are not part of a recording.
+//
+// File layout: MAGIC, VERSION, the panel's visible rectangle when recording
+// started (x, y, width, height), then records. A record starts with a type
+// byte: STATE is followed by the tool name, the RGB color and the line size;
+// any other value is a MouseEvent id minus MOUSE_FIRST, followed by varints
+// for the nanoseconds since the previous event, x, y, the extended modifiers,
+// the button and the click count.
+class InputRecorder extends MouseAdapter {
+    private static final int MAGIC = 0x56474952; // "VGIR"
+    private static final int VERSION = 1;
+    private static final int STATE = 0xFF;
+
+    // One recorded event and the tool state in effect for it.
+    record Event(long nanos, int id, int x, int y, int modifiers, int button, int clickCount,
+                 String tool, Color color, int lineSize) {
+    }
+
+    record Recording(Rectangle view, List<Event> events) {
+    }
+
+    private final DrawingPanel panel;
+    private final ToolBar toolBar;
+    private final DataOutputStream out;
+    private long last;
+    private String tool;
+    private Color color;
+    private int lineSize;
+
+    private InputRecorder(DrawingPanel panel, ToolBar toolBar, DataOutputStream out) {
+        this.panel = panel;
+        this.toolBar = toolBar;
+        this.out = out;
+    }
+
+    // Starts recording into path; null if the file cannot be created.
+    static InputRecorder start(DrawingPanel panel, ToolBar toolBar, Path path) {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            Rectangle view = panel.getVisibleRect();
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(view.x);
+            out.writeInt(view.y);
+            out.writeInt(view.width);
+            out.writeInt(view.height);
+            InputRecorder recorder = new InputRecorder(panel, toolBar, out);
+            recorder.last = System.nanoTime();
+            panel.addMouseListener(recorder);
+            panel.addMouseMotionListener(recorder);
+            return recorder;
+        } catch (IOException e) {
+            System.err.println("Input recording disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    void close() {
+        panel.removeMouseListener(this);
+        panel.removeMouseMotionListener(this);
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Input recording incomplete: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void mousePressed(MouseEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void mouseReleased(MouseEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void mouseClicked(MouseEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void mouseEntered(MouseEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void mouseExited(MouseEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void mouseMoved(MouseEvent e) {
+        record(e);
+    }
+
+    private void record(MouseEvent e) {
+        long now = System.nanoTime();
+        try {
+            if (!toolBar.getCurrentTool().equals(tool) || !toolBar.getSelectedColor().equals(color)
+                    || toolBar.getLineSize() != lineSize) {
+                tool = toolBar.getCurrentTool();
+                color = toolBar.getSelectedColor();
+                lineSize = toolBar.getLineSize();
+                out.writeByte(STATE);
+                out.writeUTF(tool);
+                out.writeInt(color.getRGB());
+                out.writeInt(lineSize);
+            }
+            out.writeByte(e.getID() - MouseEvent.MOUSE_FIRST);
+            writeVarLong(now - last);
+            writeVarLong(zigzag(e.getX()));
+            writeVarLong(zigzag(e.getY()));
+            writeVarLong(e.getModifiersEx());
+            writeVarLong(e.getButton());
+            writeVarLong(e.getClickCount());
+            if (e.getID() == MouseEvent.MOUSE_RELEASED) {
+                // a gesture is over; keep it if the editor dies afterwards
+                out.flush();
+            }
+        } catch (IOException ex) {
+            System.err.println("Input recording disabled: " + ex.getMessage());
+            close();
+        }
+        last = now;
+    }
+
+    static Recording read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                throw new IOException("Not an input recording: " + path);
+            }
+            Rectangle view = new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            List<Event> events = new ArrayList<>();
+            String tool = "Rectangle";
+            Color color = Color.BLACK;
+            int lineSize = 1;
+            long nanos = 0;
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                try {
+                    if (type == STATE) {
+                        tool = in.readUTF();
+                        color = new Color(in.readInt(), true);
+                        lineSize = in.readInt();
+                        continue;
+                    }
+                    nanos += readVarLong(in);
+                    int x = unzigzag(readVarLong(in));
+                    int y = unzigzag(readVarLong(in));
+                    events.add(new Event(nanos, MouseEvent.MOUSE_FIRST + type, x, y, (int) readVarLong(in),
+                            (int) readVarLong(in), (int) readVarLong(in), tool, color, lineSize));
+                } catch (EOFException e) {
+                    // torn last record of an editor that did not close the recording
+                    break;
+                }
+            }
+            return new Recording(view, events);
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static int unzigzag(long value) {
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+}
@@ -0,0 +1,225 @@
+package editor;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+// Plays an InputRecorder recording back against a fresh headless
+// DrawingPanel and reports, per tool and event type, how long the mouse
+// handlers took and how long painting the region they asked to repaint took,
+// at p50/p99/max. The repaint is done right after each event, clipped to the
+// damage and to the view that was visible when recording started, the way
+// the RepaintManager would paint it.
+//
+//   java -cp ... editor.InputReplay [--fast] [-d document.vgd|.svg]
+//        [--generate "generator options"] recording.vgi
+//
+// Without --fast events are delivered at their recorded pace. A recording
+// made on a document needs the same document to replay against (-d, or the
+// -Deditor.generate options the editor was started with as --generate).
+public class InputReplay {
+    // Collects the regions the handlers ask to repaint; the standard manager
+    // would drop them because a headless panel has no peer.
+    private static final class DamageCollector extends RepaintManager {
+        private Rectangle damage;
+
+        @Override
+        public void addDirtyRegion(JComponent c, int x, int y, int w, int h) {
+            if (w > 0 && h > 0) {
+                Rectangle region = new Rectangle(x, y, w, h);
+                damage = damage == null ? region : damage.union(region);
+            }
+        }
+
+        @Override
+        public void addInvalidComponent(JComponent invalidComponent) {
+        }
+
+        Rectangle take() {
+            Rectangle region = damage;
+            damage = null;
+            return region;
+        }
+    }
+
+    // Latencies of one tool and event type, in nanoseconds.
+    private static final class Samples {
+        private long[] handler = new long[64];
+        private long[] repaint = new long[64];
+        private int handled, repainted;
+
+        void add(long handlerNanos, long repaintNanos) {
+            if (handled == handler.length) {
+                handler = Arrays.copyOf(handler, handled * 2);
+            }
+            handler[handled++] = handlerNanos;
+            if (repaintNanos >= 0) {
+                if (repainted == repaint.length) {
+                    repaint = Arrays.copyOf(repaint, repainted * 2);
+                }
+                repaint[repainted++] = repaintNanos;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        boolean fast = false;
+        File document = null;
+        String generate = null;
+        Path recording = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fast" -> fast = true;
+                case "-d", "--document" -> document = new File(args[++i]);
+                case "--generate" -> generate = args[++i];
+                default -> recording = Path.of(args[i]);
+            }
+        }
+        if (recording == null) {
+            System.err.println("Usage: InputReplay [--fast] [-d document] [--generate \"generator options\"] recording.vgi");
+            System.exit(2);
+            return;
+        }
+        InputRecorder.Recording input = InputRecorder.read(recording);
+        List<ColoredShape> shapes = document != null ? BatchRenderer.load(document)
+                : generate != null ? DocumentGenerator.parse(generate.trim().split("\\s+")).generate() : null;
+        boolean realTime = !fast;
+        Map<String, Samples> samples = new TreeMap<>();
+        long[] elapsed = new long[1];
+        SwingUtilities.invokeAndWait(() -> elapsed[0] = replay(input, shapes, realTime, samples));
+        print(input.events().size(), elapsed[0], samples);
+        System.exit(0);
+    }
+
+    private static long replay(InputRecorder.Recording input, List<ColoredShape> shapes, boolean realTime,
+                               Map<String, Samples> samples) {
+        DamageCollector damage = new DamageCollector();
+        RepaintManager.setCurrentManager(damage);
+        DrawingPanel panel = new DrawingPanel();
+        ToolBar toolBar = new ToolBar(panel);
+        panel.setToolBar(toolBar);
+        toolBar.addShapeObserver(panel);
+        if (shapes != null) {
+            panel.setDocument(shapes);
+        }
+        panel.setSize(panel.getPreferredSize());
+        damage.take();
+
+        Rectangle view = input.view().isEmpty() ? new Rectangle(0, 0, 1920, 1080) : input.view();
+        BufferedImage frame = new BufferedImage(view.width, view.height, BufferedImage.TYPE_INT_RGB);
+        List<InputRecorder.Event> events = input.events();
+        long origin = events.isEmpty() ? 0 : events.get(0).nanos();
+        long start = System.nanoTime();
+        for (InputRecorder.Event event : events) {
+            if (realTime) {
+                long due = start + event.nanos() - origin;
+                for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            toolBar.restore(event.tool(), event.color(), event.lineSize());
+            MouseEvent e = new MouseEvent(panel, event.id(), System.currentTimeMillis(), event.modifiers(),
+                    event.x(), event.y(), event.clickCount(), false, event.button());
+
+            long before = System.nanoTime();
+            dispatch(panel, e);
+            long handled = System.nanoTime();
+            // the scroll pane would follow a panel that grew
+            Dimension size = panel.getPreferredSize();
+            if (!size.equals(panel.getSize())) {
+                panel.setSize(size);
+            }
+            Rectangle region = damage.take();
+            long repaint = -1;
+            if (region != null && region.intersects(view)) {
+                region = region.intersection(view);
+                long painting = System.nanoTime();
+                Graphics2D g2d = frame.createGraphics();
+                try {
+                    g2d.translate(-view.x, -view.y);
+                    g2d.clip(region);
+                    panel.paintComponent(g2d);
+                } finally {
+                    g2d.dispose();
+                }
+                repaint = System.nanoTime() - painting;
+            }
+            samples.computeIfAbsent(event.tool() + " " + name(event.id()), k -> new Samples())
+                    .add(handled - before, repaint);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void dispatch(DrawingPanel panel, MouseEvent e) {
+        switch (e.getID()) {
+            case MouseEvent.MOUSE_PRESSED -> {
+                for (MouseListener l : panel.getMouseListeners()) l.mousePressed(e);
+            }
+            case MouseEvent.MOUSE_RELEASED -> {
+                for (MouseListener l : panel.getMouseListeners()) l.mouseReleased(e);
+            }
+            case MouseEvent.MOUSE_CLICKED -> {
+                for (MouseListener l : panel.getMouseListeners()) l.mouseClicked(e);
+            }
+            case MouseEvent.MOUSE_ENTERED -> {
+                for (MouseListener l : panel.getMouseListeners()) l.mouseEntered(e);
+            }
+            case MouseEvent.MOUSE_EXITED -> {
+                for (MouseListener l : panel.getMouseListeners()) l.mouseExited(e);
+            }
+            case MouseEvent.MOUSE_DRAGGED -> {
+                for (MouseMotionListener l : panel.getMouseMotionListeners()) l.mouseDragged(e);
+            }
+            case MouseEvent.MOUSE_MOVED -> {
+                for (MouseMotionListener l : panel.getMouseMotionListeners()) l.mouseMoved(e);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static String name(int id) {
+        return switch (id) {
+            case MouseEvent.MOUSE_PRESSED -> "press";
+            case MouseEvent.MOUSE_RELEASED -> "release";
+            case MouseEvent.MOUSE_CLICKED -> "click";
+            case MouseEvent.MOUSE_ENTERED -> "enter";
+            case MouseEvent.MOUSE_EXITED -> "exit";
+            case MouseEvent.MOUSE_DRAGGED -> "drag";
+            case MouseEvent.MOUSE_MOVED -> "move";
+            default -> "event " + id;
+        };
+    }
+
+    private static void print(int events, long elapsed, Map<String, Samples> samples) {
+        System.out.printf(Locale.ROOT, "%-20s %7s %30s %30s%n", "", "", "handler p50/p99/max (us)", "repaint p50/p99/max (us)");
+        for (Map.Entry<String, Samples> entry : samples.entrySet()) {
+            Samples s = entry.getValue();
+            System.out.printf(Locale.ROOT, "%-20s %7d %30s %30s%n", entry.getKey(), s.handled,
+                    percentiles(s.handler, s.handled), percentiles(s.repaint, s.repainted));
+        }
+        System.out.printf(Locale.ROOT, "%d events replayed in %.2f s%n", events, elapsed / 1e9);
+    }
+
+    private static String percentiles(long[] values, int count) {
+        if (count == 0) {
+            return "-";
+        }
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return String.format(Locale.ROOT, "%.1f / %.1f / %.1f", sorted[(count - 1) / 2] / 1e3,
+                sorted[(int) Math.ceil(count * 0.99) - 1] / 1e3, sorted[count - 1] / 1e3);
+    }
+}
@@ -0,0 +1,2962 @@
+package editor;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGraphics2D;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionAdapter;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.geom.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+public class Main {
+    public static void main(String[] args) {
+        EventLog.EVENTS.startWriter(EventLog.DEFAULT_DIRECTORY);
+        DocumentJournal journal = DocumentJournal.open(DocumentJournal.DEFAULT_DIRECTORY);
+        List<ColoredShape> recovered = null;
+        if (journal != null) {
+            try {
+                recovered = journal.recover();
+            } catch (Exception e) {
+                System.err.println("Could not recover the previous session: " + e.getMessage());
+            }
+        }
+        List<ColoredShape> unsaved = recovered;
+        String generate = System.getProperty("editor.generate");
+        DocumentGenerator generator = generate == null ? null : DocumentGenerator.parse(
+                generate.isBlank() ? new String[0] : generate.trim().split("\\s+"));
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("Vector Graphics Editor");
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.setSize(1200, 1400);
+
+            DrawingPanel drawingPanel = new DrawingPanel();
+            ToolBar toolbar = new ToolBar(drawingPanel);
+            GroupingToolBar gtb = new GroupingToolBar(drawingPanel);
+            MenuBarManager mbm = new MenuBarManager(frame, drawingPanel);
+            frame.setJMenuBar(mbm.createMenuBar(drawingPanel));
+
+
+            drawingPanel.setToolBar(toolbar);
+            toolbar.addShapeObserver(drawingPanel);
+
+            frame.add(new JScrollPane(drawingPanel), BorderLayout.CENTER);
+            frame.add(gtb, BorderLayout.SOUTH);
+            frame.add(toolbar, BorderLayout.NORTH);
+
+            frame.setVisible(true);
+
+            if (generator != null) {
+                generator.fill(drawingPanel);
+            }
+            String record = System.getProperty("editor.recordInput");
+            InputRecorder recorder = record == null ? null : InputRecorder.start(drawingPanel, toolbar, Path.of(record));
+            if (recorder != null) {
+                frame.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowClosing(WindowEvent e) {
+                        recorder.close();
+                    }
+                });
+            }
+            if (journal != null) {
+                if (unsaved != null && !unsaved.isEmpty() && JOptionPane.showConfirmDialog(frame,
+                        "The editor did not shut down cleanly. Restore the unsaved drawing?",
+                        "Recover Drawing", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                    drawingPanel.setDocument(unsaved);
+                }
+                drawingPanel.setJournal(journal);
+                frame.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowClosing(WindowEvent e) {
+                        journal.close();
+                    }
+                });
+            }
+        });
+    }
+}
+
+enum SvgExportMode {
+    STREAMING,
+    BATIK
+}
+
+// The document as it was at one moment, for exports that run off the EDT.
+record DocumentSnapshot(DocumentVersion shapes, int width, int height, Color background) {
+}
+
+// Exports a snapshot, so it is safe to run on any thread. The shapes are read
+// through the given iterable, which an ExportQueue.Job uses to report
+// progress and to stop a cancelled export.
+class GraphicAdapter {
+    private final DocumentSnapshot document;
+    private final Iterable<ColoredShape> shapes;
+
+    public GraphicAdapter(DocumentSnapshot document) {
+        this(document, document.shapes());
+    }
+
+    public GraphicAdapter(DocumentSnapshot document, Iterable<ColoredShape> shapes) {
+        this.document = document;
+        this.shapes = shapes;
+    }
+
+    public void exportToSVG(String filePath) throws Exception {
+        exportToSVG(filePath, SvgExportMode.STREAMING);
+    }
+
+    public void exportToSVG(String filePath, SvgExportMode mode) throws Exception {
+        if (mode == SvgExportMode.BATIK) {
+            exportWithBatik(filePath);
+            return;
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8), 1 << 16)) {
+            new SvgStreamWriter(writer).writeDocument(shapes, document.width(), document.height(), document.background());
+        }
+    }
+
+    private void exportWithBatik(String filePath) throws Exception {
+        DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
+        Document document = domImpl.createDocument(null, "svg", null);
+        SVGGraphics2D svgGenerator = new SVGGraphics2D(document);
+
+        paint(svgGenerator);
+
+        try (Writer writer = new FileWriter(filePath)) {
+            svgGenerator.stream(writer, true);
+        }
+    }
+
+    public void exportToImage(String filePath, String format) throws Exception {
+        exportToImage(filePath, format, 1, (done, total) -> {
+        });
+    }
+
+    // Renders at scale times the canvas size, tiled across all cores and
+    // streamed to the file band by band.
+    public void exportToImage(String filePath, String format, double scale, RasterExporter.Progress progress) throws Exception {
+        exportToImage(filePath, format, scale, Runtime.getRuntime().availableProcessors(), progress);
+    }
+
+    // Same, with at most tileThreads tiles rendering at once.
+    public void exportToImage(String filePath, String format, double scale, int tileThreads,
+                              RasterExporter.Progress progress) throws Exception {
+        new RasterExporter(document, scale, tileThreads).write(format.toLowerCase(), scale * RasterExporter.BASE_DPI,
+                new File(filePath), progress);
+    }
+
+    private void paint(Graphics2D g2d) {
+        g2d.setColor(document.background());
+        g2d.fillRect(0, 0, document.width(), document.height());
+        Rectangle clip = g2d.getClipBounds();
+        for (ColoredShape shape : shapes) {
+            if (clip == null || shape.getPaintBounds().intersects(clip)) {
+                shape.paint(g2d);
+            }
+        }
+    }
+}
+class MenuBarManager {
+
+    private final JFrame frame;
+    private final DrawingPanel drawingPanel;
+    private final ExportQueue exports;
+
+    public MenuBarManager(JFrame frame, DrawingPanel drawingPanel) {
+        this.frame = frame;
+        this.drawingPanel = drawingPanel;
+        this.exports = new ExportQueue(frame);
+    }
+
+    public JMenuBar createMenuBar(DrawingPanel dw) {
+        JMenuBar menuBar = new JMenuBar();
+        JMenu fileMenu = new JMenu("File");
+
+        JMenuItem open = new JMenuItem("Open...");
+        open.addActionListener(e -> openDocument());
+        fileMenu.add(open);
+
+        JMenuItem save = new JMenuItem("Save");
+        save.addActionListener(e -> saveDocument());
+        fileMenu.add(save);
+        fileMenu.addSeparator();
+
+        JMenuItem saveToSVG = new JMenuItem("Save as SVG");
+        saveToSVG.addActionListener(e -> saveAsSVG(SvgExportMode.STREAMING));
+        fileMenu.add(saveToSVG);
+
+        JMenuItem saveToSVGBatik = new JMenuItem("Save as SVG (Batik)");
+        saveToSVGBatik.addActionListener(e -> saveAsSVG(SvgExportMode.BATIK));
+        fileMenu.add(saveToSVGBatik);
+
+        JMenuItem saveAsPng = new JMenuItem("Save as PNG");
+        saveAsPng.addActionListener(e -> saveAsImage("png"));
+        fileMenu.add(saveAsPng);
+
+        JMenuItem saveAsJpeg = new JMenuItem("Save as JPEG");
+        saveAsJpeg.addActionListener(e -> saveAsImage("jpeg"));
+        fileMenu.add(saveAsJpeg);
+
+        menuBar.add(fileMenu);
+
+        JMenu viewMenu = new JMenu("View");
+        JCheckBoxMenuItem hud = new JCheckBoxMenuItem("Performance HUD");
+        hud.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
+        hud.addActionListener(e -> drawingPanel.setHudVisible(hud.isSelected()));
+        viewMenu.add(hud);
+        menuBar.add(viewMenu);
+
+        JMenu helpMenu = new JMenu("Help");
+        JMenuItem saveEventLog = new JMenuItem("Save Event Log...");
+        saveEventLog.addActionListener(e -> saveEventLog());
+        helpMenu.add(saveEventLog);
+        menuBar.add(helpMenu);
+
+        return menuBar;
+    }
+
+    // The most recent editor events, to attach to a bug report.
+    private void saveEventLog() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save Event Log");
+        fileChooser.setSelectedFile(new File("events.txt"));
+        if (fileChooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            EventLog.EVENTS.dump(fileChooser.getSelectedFile().toPath());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(frame, "Error saving event log: " + ex.getMessage());
+        }
+    }
+
+    private void openDocument() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Open");
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+                "Drawings and SVG Files", NativeDocument.EXTENSION, "svg"));
+        if (fileChooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = fileChooser.getSelectedFile();
+        if (!file.getName().toLowerCase().endsWith(".svg")) {
+            try {
+                // only the header and index are read here
+                drawingPanel.setDocument(NativeDocument.load(file.toPath()));
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(frame, "Error opening document: " + ex.getMessage());
+            }
+            return;
+        }
+        long length = Math.max(1, file.length());
+        ProgressMonitor monitor = new ProgressMonitor(frame, "Opening " + file.getName(), null, 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+
+        SwingWorker<List<ColoredShape>, Void> worker = new SwingWorker<>() {
+            @Override
+            protected List<ColoredShape> doInBackground() throws Exception {
+                try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16) {
+                    private long read;
+
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b >= 0) {
+                            advance(1);
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int count) throws IOException {
+                        int n = super.read(buffer, offset, count);
+                        if (n > 0) {
+                            advance(n);
+                        }
+                        return n;
+                    }
+
+                    private void advance(int n) {
+                        read += n;
+                        setProgress((int) Math.min(99, read * 100 / length));
+                    }
+                }) {
+                    return new SvgStreamReader().read(in);
+                }
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    drawingPanel.setDocument(get());
+                } catch (Exception ex) {
+                    Throwable cause = ex instanceof java.util.concurrent.ExecutionException ? ex.getCause() : ex;
+                    cause.printStackTrace();
+                    JOptionPane.showMessageDialog(frame, "Error opening SVG: " + cause.getMessage());
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                monitor.setProgress((Integer) e.getNewValue());
+                if (monitor.isCanceled()) {
+                    worker.cancel(true);
+                }
+            }
+        });
+        worker.execute();
+    }
+
+    private void saveDocument() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save");
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Drawings", NativeDocument.EXTENSION));
+
+        if (fileChooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+            String filePath = fileChooser.getSelectedFile().getAbsolutePath();
+            if (!filePath.endsWith("." + NativeDocument.EXTENSION)) {
+                filePath += "." + NativeDocument.EXTENSION;
+            }
+            // written from a snapshot on the export thread, like the exports
+            DocumentSnapshot document = drawingPanel.captureDocument();
+            exports.submit(new File(filePath), (job, file) ->
+                    NativeDocument.save(job.track(document.shapes(), document.shapes().size()), file.toPath()));
+        }
+    }
+
+    private void saveAsSVG(SvgExportMode mode) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save as SVG");
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("SVG Files", "svg"));
+
+        int userSelection = fileChooser.showSaveDialog(frame);
+
+        if (userSelection == JFileChooser.APPROVE_OPTION) {
+            File fileToSave = fileChooser.getSelectedFile();
+            String filePath = fileToSave.getAbsolutePath();
+            if (!filePath.endsWith(".svg")) {
+                filePath += ".svg";
+            }
+
+            DocumentSnapshot document = drawingPanel.captureDocument();
+            exports.submit(new File(filePath), (job, file) ->
+                    new GraphicAdapter(document, job.track(document.shapes(), document.shapes().size()))
+                            .exportToSVG(file.getPath(), mode));
+        }
+    }
+
+    private void saveAsImage(String format) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save as " + format.toUpperCase());
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(format.toUpperCase() + " Files", format.toLowerCase()));
+        int userSelection = fileChooser.showSaveDialog(frame);
+
+        if (userSelection == JFileChooser.APPROVE_OPTION) {
+            File fileToSave = fileChooser.getSelectedFile();
+            String filePath = fileToSave.getAbsolutePath();
+            if (!filePath.endsWith("." + format.toLowerCase())) {
+                filePath += "." + format.toLowerCase();
+            }
+            DocumentSnapshot document = drawingPanel.captureDocument();
+            Double scale = askScale(document);
+            if (scale == null) {
+                return;
+            }
+            exports.submit(new File(filePath), (job, file) ->
+                    new GraphicAdapter(document).exportToImage(file.getPath(), format, scale, job::progress));
+        }
+    }
+
+    // Asks for the output resolution, either as a scale of the canvas or as
+    // DPI (scale 1 is 96 DPI). Returns null if the user backs out.
+    private Double askScale(DocumentSnapshot document) {
+        JSpinner scale = new JSpinner(new SpinnerNumberModel(1.0, 0.05, 100.0, 0.25));
+        JSpinner dpi = new JSpinner(new SpinnerNumberModel(RasterExporter.BASE_DPI, 5.0, 9600.0, 24.0));
+        JLabel size = new JLabel();
+        Runnable update = () -> size.setText((long) Math.ceil(document.width() * (double) scale.getValue()) + " x "
+                + (long) Math.ceil(document.height() * (double) scale.getValue()) + " px");
+        scale.addChangeListener(e -> {
+            double dots = (double) scale.getValue() * RasterExporter.BASE_DPI;
+            if (Math.abs(dots - (double) dpi.getValue()) > 1e-9) {
+                dpi.setValue(dots);
+            }
+            update.run();
+        });
+        dpi.addChangeListener(e -> {
+            double factor = (double) dpi.getValue() / RasterExporter.BASE_DPI;
+            if (Math.abs(factor - (double) scale.getValue()) > 1e-9) {
+                scale.setValue(factor);
+            }
+        });
+        update.run();
+        JPanel panel = new JPanel(new GridLayout(0, 2, 8, 4));
+        panel.add(new JLabel("Scale:"));
+        panel.add(scale);
+        panel.add(new JLabel("DPI:"));
+        panel.add(dpi);
+        panel.add(new JLabel("Size:"));
+        panel.add(size);
+        if (JOptionPane.showConfirmDialog(frame, panel, "Export Resolution", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return null;
+        }
+        return (Double) scale.getValue();
+    }
+}
+class DrawingPanel extends JPanel implements ShapeObserver{
+    private static final int CANVAS_MARGIN = 512;
+    private final List<ColoredShape> shapes = new ArrayList<>();
+    private final ShapeIndex shapeIndex = new ShapeIndex();
+    private final StaticLayer staticLayer = new StaticLayer(shapeIndex);
+    private final Rectangle extent = new Rectangle();
+    private ColoredShape currentShape = null;
+
+    private double startX, startY;
+    private ColoredShape selectedShape = null;
+    // shapes moving with the current drag and where each one started
+    private List<ColoredShape> dragged = List.of();
+    private double[] dragOrigins;
+    private int batchDepth;
+    private Rectangle2D batchDamage;
+    private final Color currentColor = Color.BLACK;
+    private final List<ColoredShape> selectedShapes = new ArrayList<>();
+    private double brushTolerance = StrokeSimplifier.DEFAULT_TOLERANCE;
+    // Performance overlay in the top left corner of the view, refreshed a few
+    // times a second while shown.
+    private boolean hudVisible;
+    private Rectangle hudBounds = new Rectangle();
+    private final Timer hudTimer = new Timer(250, e -> repaint(hudAt(getVisibleRect())));
+
+
+    private ToolBar toolBar;
+
+    private final CommandManager commandManager = new CommandManager();
+    private DocumentJournal journal;
+    // Immutable copy of the document as of the last snapshot(), and the live
+    // shapes added or changed since then.
+    private DocumentVersion version = DocumentVersion.EMPTY;
+    private Set<ColoredShape> unfrozen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public DrawingPanel() {
+        setBackground(Color.WHITE);
+        setCursor(Cursor.getDefaultCursor());
+
+        addMouseListener(new MouseAdapter() {
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                startX = e.getX();
+                startY = e.getY();
+
+                String tool = toolBar.getCurrentTool();
+
+                if ("Move".equals(tool)) {
+                    // undo may have taken selected shapes out of the document
+                    selectedShapes.removeIf(s -> shapeIndex.orderOf(s) < 0);
+                    ColoredShape found = findShapeAt(e.getX(), e.getY());
+                    if (!e.isShiftDown() && (found == null || !selectedShapes.contains(found))) {
+                        selectedShapes.clear();
+                    }
+                    if (found != null) {
+                        if (!selectedShapes.contains(found)) {
+                            selectedShapes.add(found);
+                        }
+                        selectedShape = found;
+                        // every selected shape follows the drag
+                        dragged = new ArrayList<>(selectedShapes);
+                        dragOrigins = new double[dragged.size() * 2];
+                        for (int i = 0; i < dragged.size(); i++) {
+                            dragOrigins[2 * i] = dragged.get(i).getX();
+                            dragOrigins[2 * i + 1] = dragged.get(i).getY();
+                        }
+                        staticLayer.setExcluded(dragged);
+                    }
+                    repaint();
+                    return;
+                }
+
+
+                currentShape = ShapeFactory.createShape(tool, startX, startY);
+
+                if (currentShape != null) {
+                    currentShape.setColor(toolBar.getSelectedColor());
+                    currentShape.setLineSize(toolBar.getLineSize());
+
+//                    if ("Polygon".equals(tool)) {
+//                        ((PolygonShape) currentShape).addPoint((int) startX, (int) startY);
+//                    }
+//                    else
+                        if ("Brush".equals(tool)) {
+                        ((BrushShape) currentShape).setTolerance(brushTolerance);
+                        ((BrushShape) currentShape).addPoint(startX, startY);
+                    }
+                }
+
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                String tool = toolBar.getCurrentTool();
+                if ("Move".equals(tool) && selectedShape != null) {
+                    List<Command> moves = new ArrayList<>();
+                    for (int i = 0; i < dragged.size(); i++) {
+                        ColoredShape shape = dragged.get(i);
+                        double oldX = dragOrigins[2 * i];
+                        double oldY = dragOrigins[2 * i + 1];
+                        if (shape.getX() != oldX || shape.getY() != oldY) {
+                            moves.add(new MoveCommand(DrawingPanel.this, shape, oldX, oldY, shape.getX(), shape.getY()));
+                        }
+                    }
+                    if (moves.size() == 1) {
+                        commandManager.executeCommand(moves.get(0));
+                    } else if (!moves.isEmpty()) {
+                        commandManager.executeCommand(new CompositeCommand(DrawingPanel.this, moves));
+                    }
+
+                    selectedShape = null;
+                    dragged = List.of();
+                    staticLayer.setExcluded(List.of());
+                    return;
+                    }
+                    if (currentShape != null) {
+                        if ("Brush".equals(tool)) {
+                            ((BrushShape) currentShape).simplify();
+                            commandManager.executeCommand(new AddShapeCommand(DrawingPanel.this, currentShape));
+                        } else if (!"Polygon".equals(tool)) {
+                            commandManager.executeCommand(new AddShapeCommand(DrawingPanel.this, currentShape));
+                        }
+
+                        currentShape = null;
+                    }
+                if ("Polygon".equals(tool)) {
+                    if (currentShape == null) {
+                        currentShape = new PolygonShape();
+                        currentShape.setColor(currentColor);
+                        currentShape.setLineSize(toolBar.getLineSize());
+                        currentShape.addPoint(e.getX(), e.getY());
+                    }
+                }
+            }
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                String tool = toolBar.getCurrentTool();
+
+                if ("Polygon".equals(tool)) {
+                    if (currentShape == null) {
+                        currentShape = new PolygonShape();
+                        currentShape.setColor(currentColor);
+                        currentShape.setLineSize(toolBar.getLineSize());
+                    }
+                    PolygonShape poly = (PolygonShape) currentShape;
+                    poly.addPoint(e.getX(), e.getY());
+                    repaint();
+
+                    if (e.getClickCount() == 2) {
+                        poly.closePolygon();
+                        commandManager.executeCommand(new AddShapeCommand(DrawingPanel.this, poly));
+                        currentShape = null;
+                        repaint();
+                    }
+                } else {
+                    super.mouseClicked(e);
+                }
+            }
+
+        });
+
+        addMouseMotionListener(new MouseMotionAdapter() {
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                String tool = toolBar.getCurrentTool();
+                if ("Move".equals(tool) && selectedShape != null) {
+                    double dx = e.getX() - startX;
+                    double dy = e.getY() - startY;
+                    Rectangle2D damaged = null;
+                    for (int i = 0; i < dragged.size(); i++) {
+                        ColoredShape shape = dragged.get(i);
+                        Rectangle2D before = shape.getPaintBounds();
+                        shape.move(dragOrigins[2 * i] + dx, dragOrigins[2 * i + 1] + dy);
+                        shapeIndex.update(shape);
+                        Rectangle2D region = before.createUnion(shape.getPaintBounds());
+                        damaged = damaged == null ? region : damaged.createUnion(region);
+                    }
+                    repaint(damaged.getBounds());
+                    return;
+                }
+                if (currentShape == null) return;
+
+                Rectangle2D before = currentShape.getPaintBounds();
+
+                double currentX = e.getX();
+                double currentY = e.getY();
+
+                if (currentShape instanceof BrushShape brush) {
+                    brush.addPoint(currentX, currentY);
+                } else if (currentShape instanceof ArcShape arc) {
+                    double dx = e.getX() - startX;
+                    double dy = e.getY() - startY;
+
+                    double w = Math.abs(dx);
+                    double h = Math.abs(dy);
+                    double newX = Math.min(startX, e.getX());
+                    double newY = Math.min(startY, e.getY());
+
+                    arc.setFlipped(dy < 0);
+                    arc.setBounds(newX, newY, w, h);
+                }else if (currentShape instanceof LineShape line) {
+                    double dx = currentX - startX;
+                    double dy = currentY - startY;
+                    line.setBounds(startX, startY, dx, dy);
+                }else{
+                    double width  = Math.abs(currentX - startX);
+                    double height = Math.abs(currentY - startY);
+                    double newX   = Math.min(startX, currentX);
+                    double newY   = Math.min(startY, currentY);
+
+                    currentShape.setBounds(newX, newY, width, height);
+                }
+
+                repaintRegion(before, currentShape.getPaintBounds());
+            }
+        });
+    }
+    public void groupSelectedShapes() {
+        selectedShapes.removeIf(s -> shapeIndex.orderOf(s) < 0);
+        if (selectedShapes.size() < 2) {
+            return;
+        }
+        GroupCommand command = new GroupCommand(this, selectedShapes);
+        commandManager.executeCommand(command);
+        selectedShapes.clear();
+        selectedShapes.add(command.getGroup());
+    }
+
+    public void ungroupSelectedShapes() {
+        if (selectedShapes.size() == 1 && selectedShapes.get(0) instanceof ShapeGroup group && shapeIndex.orderOf(group) >= 0) {
+            commandManager.executeCommand(new UngroupCommand(this, group));
+            selectedShapes.clear();
+        }
+    }
+    public void rotateSelectedGroup(double theta) {
+        if (selectedShapes.size() == 1 && selectedShapes.get(0) instanceof ShapeGroup group && shapeIndex.orderOf(group) >= 0) {
+            AffineTransform before = group.getTransform();
+            group.rotate(theta);
+            commandManager.executeCommand(new TransformCommand(this, group, before, group.getTransform()));
+        }
+    }
+
+    ColoredShape findShapeAt(double px, double py) {
+        Metrics.HitTestEvent event = new Metrics.HitTestEvent();
+        event.begin();
+        long start = System.nanoTime();
+        ColoredShape found = materialize(shapeIndex.shapeAt(px, py));
+        if (Metrics.ENABLED) {
+            Metrics.HIT_TEST.record(System.nanoTime() - start);
+        }
+        if (event.shouldCommit()) {
+            event.x = px;
+            event.y = py;
+            event.hit = found != null;
+            event.commit();
+        }
+        return found;
+    }
+
+    // Shapes loaded from a native document start out as read-only proxies;
+    // swap in the decoded shape once one is picked for editing.
+    private ColoredShape materialize(ColoredShape shape) {
+        if (!(shape instanceof LazyShape lazy)) {
+            return shape;
+        }
+        // a copy of its own, since the proxy may still be painted by a
+        // snapshot after the decoded shape has been edited
+        ColoredShape decoded = lazy.decodeRecord();
+        shapes.set(positionOf(lazy), decoded);
+        shapeIndex.replace(lazy, decoded);
+        if (journal != null) {
+            journal.shapeReplaced(lazy, decoded);
+        }
+        return decoded;
+    }
+
+    public List<ColoredShape> getShapes() {
+        return Collections.unmodifiableList(shapes);
+    }
+
+    public List<ColoredShape> findShapesIn(Rectangle2D area) {
+        return shapeIndex.query(area);
+    }
+
+    private boolean isInsideShape(ColoredShape shape, double px, double py) {
+        double x = shape.getX();
+        double y = shape.getY();
+        double w = shape.getWidth();
+        double h = shape.getHeight();
+        return px >= x && px <= x + w && py >= y && py <= y + h;
+    }
+
+    public void undo() {
+        commandManager.undo();
+    }
+
+    public void redo() {
+        commandManager.redo();
+    }
+
+    // Replaces the whole drawing, e.g. after File > Open. History is dropped
+    // since its commands refer to shapes that are no longer in the model.
+    public void setDocument(List<ColoredShape> document) {
+        shapes.clear();
+        shapeIndex.clear();
+        selectedShapes.clear();
+        selectedShape = null;
+        currentShape = null;
+        dragged = List.of();
+        staticLayer.setExcluded(List.of());
+        commandManager.clear();
+        extent.setBounds(0, 0, 0, 0);
+        unfrozen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<ColoredShape> frozen = new ArrayList<>();
+        long[] keys = new long[document.size()];
+        for (ColoredShape shape : document) {
+            shapes.add(shape);
+            shapeIndex.insert(shape);
+            extent.add(shape.getPaintBounds());
+            // lazily loaded shapes are read-only and go into the version as they are
+            if (shape instanceof LazyShape) {
+                keys[frozen.size()] = shapeIndex.orderOf(shape);
+                frozen.add(shape);
+            } else {
+                unfrozen.add(shape);
+            }
+        }
+        version = DocumentVersion.of(frozen, keys);
+        staticLayer.invalidate();
+        if (journal != null) {
+            journal.documentReplaced(shapes, shapeIndex::orderOf);
+        }
+        revalidate();
+        repaint();
+    }
+
+    public void setJournal(DocumentJournal journal) {
+        this.journal = journal;
+        journal.start(shapes, shapeIndex::orderOf);
+    }
+
+    public void addShape(ColoredShape shape) {
+        shapes.add(shape);
+        shapeIndex.insert(shape);
+        unfrozen.add(shape);
+        if (journal != null) {
+            journal.shapeAdded(shape, shapeIndex.orderOf(shape));
+        }
+        damage(shape.getPaintBounds());
+    }
+
+    // Puts a shape back at the z-order key it had before it was removed.
+    public void insertShape(ColoredShape shape, long order) {
+        int low = 0, high = shapes.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (shapeIndex.orderOf(shapes.get(mid)) < order) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        shapes.add(low, shape);
+        shapeIndex.insert(shape, order);
+        unfrozen.add(shape);
+        if (journal != null) {
+            journal.shapeAdded(shape, order);
+        }
+        damage(shape.getPaintBounds());
+    }
+
+    public void removeShape(ColoredShape shape) {
+        int position = positionOf(shape);
+        if (position < 0) {
+            return;
+        }
+        shapes.remove(position);
+        version = version.without(shapeIndex.orderOf(shape));
+        unfrozen.remove(shape);
+        shapeIndex.remove(shape);
+        if (journal != null) {
+            journal.shapeRemoved(shape);
+        }
+        damage(shape.getPaintBounds());
+    }
+
+    long orderOf(ColoredShape shape) {
+        return shapeIndex.orderOf(shape);
+    }
+
+    // The document as it is right now, as a version that stays unchanged
+    // and can be read from any thread. Only shapes added or changed since
+    // the previous snapshot are copied; the rest is shared with it.
+    public DocumentVersion snapshot() {
+        if (unfrozen.size() > shapes.size() / 8) {
+            // cheaper to rebuild in one linear pass than to insert one by one
+            List<ColoredShape> changed = new ArrayList<>(unfrozen.size());
+            for (ColoredShape shape : shapes) {
+                if (unfrozen.contains(shape)) {
+                    changed.add(shape);
+                }
+            }
+            Iterator<ColoredShape> copies = NativeDocument.freezeAll(changed).iterator();
+            List<ColoredShape> frozen = new ArrayList<>(shapes.size());
+            long[] keys = new long[shapes.size()];
+            for (int i = 0; i < shapes.size(); i++) {
+                ColoredShape shape = shapes.get(i);
+                keys[i] = shapeIndex.orderOf(shape);
+                frozen.add(unfrozen.contains(shape) ? copies.next() : version.get(keys[i]));
+            }
+            version = DocumentVersion.of(frozen, keys);
+        } else {
+            for (ColoredShape shape : unfrozen) {
+                long key = shapeIndex.orderOf(shape);
+                // removeShape drops shapes from unfrozen, but a shape that is
+                // no longer in the document must never come back with key -1
+                if (key >= 0) {
+                    version = version.with(key, NativeDocument.freeze(shape));
+                }
+            }
+        }
+        if (!unfrozen.isEmpty()) {
+            // a fresh set, since clearing keeps the table that iteration walks
+            unfrozen = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+        return version;
+    }
+
+    // shapes is sorted by z-order key, so this is a binary search
+    private int positionOf(ColoredShape shape) {
+        long order = shapeIndex.orderOf(shape);
+        int low = 0, high = shapes.size() - 1;
+        while (order >= 0 && low <= high) {
+            int mid = (low + high) >>> 1;
+            long midOrder = shapeIndex.orderOf(shapes.get(mid));
+            if (midOrder < order) {
+                low = mid + 1;
+            } else if (midOrder > order) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Commands run between beginBatch and endBatch invalidate the cache and
+    // repaint once, for the union of everything they touched.
+    void beginBatch() {
+        batchDepth++;
+    }
+
+    void endBatch() {
+        if (--batchDepth == 0 && batchDamage != null) {
+            Rectangle2D region = batchDamage;
+            batchDamage = null;
+            damage(region);
+        }
+    }
+
+    private void damage(Rectangle2D region) {
+        if (batchDepth > 0) {
+            batchDamage = batchDamage == null ? region : batchDamage.createUnion(region);
+            return;
+        }
+        staticLayer.invalidate(region);
+        growExtent(region);
+        repaint(region.getBounds());
+    }
+
+    public void shapeChanged(ColoredShape shape) {
+        Rectangle2D before = shapeIndex.boundsOf(shape);
+        if (before == null) {
+            // not in the document (e.g. a group whose creation was undone)
+            return;
+        }
+        shapeIndex.update(shape);
+        unfrozen.add(shape);
+        if (journal != null) {
+            journal.shapeChanged(shape);
+        }
+        damage(before.createUnion(shape.getPaintBounds()));
+    }
+
+    // The canvas grows with its content so large posters can be scrolled to.
+    private void growExtent(Rectangle2D bounds) {
+        if (!extent.contains(bounds)) {
+            extent.add(bounds);
+            revalidate();
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        Dimension size = new Dimension(extent.x + extent.width + CANVAS_MARGIN, extent.y + extent.height + CANVAS_MARGIN);
+        if (getParent() instanceof JViewport viewport) {
+            size.width = Math.max(size.width, viewport.getWidth());
+            size.height = Math.max(size.height, viewport.getHeight());
+        }
+        return size;
+    }
+
+    public double getBrushTolerance() {
+        return brushTolerance;
+    }
+
+    public void setBrushTolerance(double brushTolerance) {
+        this.brushTolerance = brushTolerance;
+    }
+
+    public HistoryStats getHistoryStats() {
+        return commandManager.getStats();
+    }
+
+    public void setHistoryLimits(int entries, long bytes) {
+        commandManager.setLimit(entries);
+        commandManager.setBudget(bytes);
+    }
+
+    public TileCacheStats getTileCacheStats() {
+        return staticLayer.getStats();
+    }
+
+    public long getTileCacheBudget() {
+        return staticLayer.getMemoryBudget();
+    }
+
+    public void setTileCacheBudget(long bytes) {
+        staticLayer.setMemoryBudget(bytes);
+    }
+
+    public void moveShape(ColoredShape shape, double newX, double newY) {
+        double oldX = shape.getX();
+        double oldY = shape.getY();
+        commandManager.executeCommand(new MoveCommand(this, shape, oldX, oldY, newX, newY));
+    }
+
+    private void repaintRegion(Rectangle2D before, Rectangle2D after) {
+        repaint(before.createUnion(after).getBounds());
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        Metrics.FrameEvent event = new Metrics.FrameEvent();
+        event.begin();
+        long painted = Metrics.SHAPES_PAINTED.sum();
+        long culled = Metrics.SHAPES_CULLED.sum();
+        TileCacheStats tiles = staticLayer.getStats();
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        staticLayer.paint(g2d, getWidth(), getHeight(), getBackground());
+        Rectangle clip = g2d.getClipBounds();
+        int skipped = 0;
+        for (ColoredShape shape : staticLayer.getExcluded()) {
+            if (clip == null || shape.getPaintBounds().intersects(clip)) {
+                Metrics.paint(shape, g2d);
+            } else {
+                skipped++;
+            }
+        }
+        Metrics.culled(skipped);
+        if (currentShape != null) {
+            Metrics.paint(currentShape, g2d);
+        }
+        // the HUD refreshing itself is not a frame of the drawing
+        boolean hudRefresh = hudVisible && clip != null && hudBounds.contains(clip);
+        if (!hudRefresh) {
+            TileCacheStats after = staticLayer.getStats();
+            painted = Metrics.SHAPES_PAINTED.sum() - painted;
+            culled = Metrics.SHAPES_CULLED.sum() - culled;
+            long tileHits = after.hits() - tiles.hits();
+            long tileMisses = after.misses() - tiles.misses();
+            Metrics.frame(start, System.nanoTime(), painted, culled, tileHits, tileMisses);
+            event.end();
+            if (event.shouldCommit()) {
+                event.clipWidth = clip == null ? getWidth() : clip.width;
+                event.clipHeight = clip == null ? getHeight() : clip.height;
+                event.shapesPainted = painted;
+                event.shapesCulled = culled;
+                event.tileHits = tileHits;
+                event.tileMisses = tileMisses;
+                event.commit();
+            }
+        }
+        if (hudVisible) {
+            paintHud(g2d);
+        }
+    }
+
+    public boolean isHudVisible() {
+        return hudVisible;
+    }
+
+    public void setHudVisible(boolean visible) {
+        hudVisible = visible;
+        // blitting would drag the overlay along with the content when scrolling
+        if (getParent() instanceof JViewport viewport) {
+            viewport.setScrollMode(visible ? JViewport.SIMPLE_SCROLL_MODE : JViewport.BLIT_SCROLL_MODE);
+        }
+        if (visible) {
+            hudTimer.start();
+        } else {
+            hudTimer.stop();
+        }
+        repaint(getVisibleRect());
+    }
+
+    private Rectangle hudAt(Rectangle view) {
+        return new Rectangle(view.x + 8, view.y + 8, hudBounds.width, hudBounds.height);
+    }
+
+    private void paintHud(Graphics2D g2d) {
+        Rectangle view = getVisibleRect();
+        TileCacheStats tiles = staticLayer.getStats();
+        Metrics.Frame frame = Metrics.lastFrame();
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "%d fps  frame %.1f ms  p99 %.1f ms", Metrics.framesPerSecond(),
+                frame.nanos() / 1e6, Metrics.FRAME.percentile(0.99) / 1e6));
+        lines.add(String.format(Locale.ROOT, "last frame: %d tiles cached, %d rendered", frame.tileHits(),
+                frame.tileMisses()));
+        lines.add(String.format(Locale.ROOT, "  shapes %d painted, %d culled", frame.painted(), frame.culled()));
+        lines.add(String.format(Locale.ROOT, "tile cache %.1f%% hits, %d tiles, %d MB, render p99 %.1f ms",
+                tiles.hitRate() * 100, tiles.tiles(), tiles.bytesUsed() >> 20, Metrics.TILE.percentile(0.99) / 1e6));
+        lines.add(String.format(Locale.ROOT, "hit test p99 %.0f us  command p99 %.0f us",
+                Metrics.HIT_TEST.percentile(0.99) / 1e3, Metrics.COMMAND.percentile(0.99) / 1e3));
+        for (Map.Entry<String, Metrics.Histogram> entry : Metrics.paintByType().entrySet()) {
+            Metrics.Histogram paints = entry.getValue();
+            lines.add(String.format(Locale.ROOT, "%-14s %9d  p99 %.1f us", entry.getKey(), paints.count(),
+                    paints.percentile(0.99) / 1e3));
+        }
+
+        Graphics2D hud = (Graphics2D) g2d.create();
+        try {
+            hud.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            hud.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+            FontMetrics fm = hud.getFontMetrics();
+            int width = 0;
+            for (String line : lines) {
+                width = Math.max(width, fm.stringWidth(line));
+            }
+            Rectangle box = new Rectangle(view.x + 8, view.y + 8, width + 12, lines.size() * fm.getHeight() + 8);
+            hudBounds = box;
+            hud.setColor(new Color(0, 0, 0, 170));
+            hud.fill(box);
+            hud.setColor(Color.WHITE);
+            int y = box.y + 4 + fm.getAscent();
+            for (String line : lines) {
+                hud.drawString(line, box.x + 6, y);
+                y += fm.getHeight();
+            }
+        } finally {
+            hud.dispose();
+        }
+    }
+
+    // A snapshot of the document and the canvas it is drawn on, for
+    // exporters running off the EDT.
+    public DocumentSnapshot captureDocument() {
+        return new DocumentSnapshot(snapshot(), getWidth(), getHeight(), getBackground());
+    }
+
+    @Override
+    public void onShapeSelected(String shapeName) {
+        if ("Move".equals(shapeName)) {
+            setCursor(Cursor.getDefaultCursor());
+        } else {
+            setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
+        }
+    }
+
+    public void setToolBar(ToolBar toolBar) {
+        this.toolBar = toolBar;
+    }
+}
+
+class ToolBar extends JToolBar {
+    private String currentTool = "Rectangle";
+    private Color selectedColor = Color.BLACK;
+    private int lineSize = 1;
+    private final List<ShapeObserver> observers = new ArrayList<>();
+
+
+    public ToolBar(DrawingPanel drawingPanel) {
+        JSlider strokeSlider = new JSlider(1, 21, lineSize);
+        strokeSlider.addChangeListener(e -> lineSize = strokeSlider.getValue());
+        addButton("Rectangle", () -> currentTool = "Rectangle");
+        addButton("Ellipse", () -> currentTool = "Ellipse");
+        addButton("Circle", () -> currentTool = "Circle");
+//        addButton("Polygon", () -> currentTool = "Polygon");
+        addButton("Arc", () -> currentTool = "ArcShape");
+        addButton("Line", () -> currentTool = "Line");
+        addButton("Brush", () -> currentTool = "Brush");
+        add(strokeSlider);
+        addButton("Move", () -> currentTool = "Move");
+        addButton("Undo", drawingPanel::undo);
+        addButton("Redo", drawingPanel::redo);
+
+        JButton colorButton = new JButton("Color");
+        colorButton.addActionListener(e -> {
+            Color c = JColorChooser.showDialog(drawingPanel, "Choose a color", selectedColor);
+            if (c != null) selectedColor = c;
+        });
+        add(colorButton);
+
+
+    }
+
+    private void addButton(String name, Runnable action) {
+        JButton btn = new JButton(name);
+        btn.addActionListener(e -> {
+            setCurrentTool(name);
+            action.run();
+        });
+        add(btn);
+    }
+
+    public String getCurrentTool() {
+        return currentTool;
+    }
+
+    public Color getSelectedColor() {
+        return selectedColor;
+    }
+
+    public int getLineSize() {
+        return lineSize;
+    }
+
+    private void setCurrentTool(String tool) {
+        currentTool = tool;
+        notifyObservers(tool);
+    }
+
+    // Puts back the tool state an InputRecorder captured with an event.
+    void restore(String tool, Color color, int lineSize) {
+        if (!tool.equals(currentTool)) {
+            setCurrentTool(tool);
+        }
+        selectedColor = color;
+        this.lineSize = lineSize;
+    }
+
+    public void addShapeObserver(ShapeObserver observer) {
+        observers.add(observer);
+    }
+
+    private void notifyObservers(String tool) {
+        for (ShapeObserver observer : observers) {
+            observer.onShapeSelected(tool);
+        }
+    }
+
+}
+class GroupingToolBar extends JToolBar {
+    public GroupingToolBar(DrawingPanel drawingPanel) {
+        setOrientation(HORIZONTAL);
+        setFloatable(false);
+
+        JButton groupButton = new JButton("Group");
+        groupButton.addActionListener(e -> drawingPanel.groupSelectedShapes());
+        add(groupButton);
+
+        JButton ungroupButton = new JButton("Ungroup");
+        ungroupButton.addActionListener(e -> drawingPanel.ungroupSelectedShapes());
+        add(ungroupButton);
+
+        JButton rotateButton = new JButton("Rotate");
+        rotateButton.addActionListener(e -> drawingPanel.rotateSelectedGroup(Math.toRadians(15)));
+        add(rotateButton);
+    }
+}
+
+// Undo/redo history bounded by an entry count and an estimated heap budget.
+// The model is edited in place, so the live document already is the baseline
+// every remaining entry builds on: evicting the oldest entry just folds it
+// into that baseline, dropping the command and the shapes it kept alive.
+class CommandManager {
+    static final int DEFAULT_LIMIT = Integer.getInteger("editor.undoLimit", 500);
+    static final long DEFAULT_BUDGET = Long.getLong("editor.undoBudget", 64L << 20);
+    static final long MERGE_WINDOW = Long.getLong("editor.mergeWindowMillis", 1000);
+
+    private record Entry(Command command, long bytes) {
+    }
+
+    // First element is the most recent; history is only touched on the EDT.
+    private final ArrayDeque<Entry> undoStack = new ArrayDeque<>();
+    private final ArrayDeque<Entry> redoStack = new ArrayDeque<>();
+    private int limit = DEFAULT_LIMIT;
+    private long budget = DEFAULT_BUDGET;
+    private long bytesUsed;
+    private long folded;
+    private long mergeWindow = MERGE_WINDOW;
+    // the entry that the next command may still be merged into
+    private Entry mergeTarget;
+    private long mergeDeadline;
+
+    public void executeCommand(Command cmd) {
+        Metrics.CommandEvent event = new Metrics.CommandEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean merged = execute(cmd);
+        if (Metrics.ENABLED) {
+            Metrics.COMMAND.record(System.nanoTime() - start);
+        }
+        if (event.shouldCommit()) {
+            event.command = cmd.getClass().getSimpleName();
+            event.merged = merged;
+            event.commit();
+        }
+    }
+
+    private boolean execute(Command cmd) {
+        cmd.execute();
+        long now = System.currentTimeMillis();
+        Entry top = undoStack.peekFirst();
+        if (mergeWindow > 0 && top != null && top == mergeTarget && now <= mergeDeadline && top.command().mergeWith(cmd)) {
+            // a merged composite grows with every command it absorbs
+            undoStack.removeFirst();
+            bytesUsed -= top.bytes();
+            push(undoStack, top.command());
+            mergeTarget = undoStack.peekFirst();
+            mergeDeadline = now + mergeWindow;
+            trim();
+            EventLog.EVENTS.record(EventLog.Type.COMMAND_MERGED, cmd.getClass(), cmd.shapeId(), undoStack.size());
+            return true;
+        }
+        push(undoStack, cmd);
+        mergeTarget = undoStack.peekFirst();
+        mergeDeadline = now + mergeWindow;
+        clearRedo();
+        trim();
+        EventLog.EVENTS.record(EventLog.Type.COMMAND_EXECUTED, cmd.getClass(), cmd.shapeId(), undoStack.size());
+        return false;
+    }
+
+    public void undo() {
+        mergeTarget = null;
+        if (!undoStack.isEmpty()) {
+            Entry entry = undoStack.removeFirst();
+            // before undoing, while an added shape is still in the document
+            long shape = entry.command().shapeId();
+            entry.command().undo();
+            redoStack.addFirst(entry);
+            EventLog.EVENTS.record(EventLog.Type.UNDO, entry.command().getClass(), shape, undoStack.size());
+        }
+    }
+
+    public void redo() {
+        mergeTarget = null;
+        if (!redoStack.isEmpty()) {
+            Entry entry = redoStack.removeFirst();
+            entry.command().redo();
+            undoStack.addFirst(entry);
+            EventLog.EVENTS.record(EventLog.Type.REDO, entry.command().getClass(), entry.command().shapeId(), redoStack.size());
+        }
+    }
+
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        bytesUsed = 0;
+        mergeTarget = null;
+    }
+
+    public long getMergeWindow() {
+        return mergeWindow;
+    }
+
+    // Consecutive commands that can merge and run within this many
+    // milliseconds of each other become one undo step; 0 turns merging off.
+    public void setMergeWindow(long millis) {
+        this.mergeWindow = millis;
+        mergeTarget = null;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = Math.max(0, limit);
+        trim();
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public void setBudget(long bytes) {
+        this.budget = Math.max(0, bytes);
+        trim();
+    }
+
+    public HistoryStats getStats() {
+        return new HistoryStats(undoStack.size(), redoStack.size(), bytesUsed, budget, folded);
+    }
+
+    private void push(ArrayDeque<Entry> stack, Command cmd) {
+        Entry entry = new Entry(cmd, cmd.estimatedSize());
+        stack.addFirst(entry);
+        bytesUsed += entry.bytes();
+    }
+
+    private void clearRedo() {
+        for (Entry entry : redoStack) {
+            bytesUsed -= entry.bytes();
+        }
+        redoStack.clear();
+    }
+
+    // Redo entries only exist right after undoing, so the oldest undo
+    // entries are always the first to go.
+    private void trim() {
+        while (!undoStack.isEmpty() && (undoStack.size() + redoStack.size() > limit || bytesUsed > budget)) {
+            bytesUsed -= undoStack.removeLast().bytes();
+            folded++;
+        }
+        while (!redoStack.isEmpty() && (redoStack.size() > limit || bytesUsed > budget)) {
+            bytesUsed -= redoStack.removeLast().bytes();
+        }
+    }
+}
+
+record HistoryStats(int undoEntries, int redoEntries, long bytesUsed, long budget, long folded) {
+}
+
+interface Command {
+    void execute();
+    void undo();
+    void redo();
+
+    // Rough heap footprint of the command and of anything only it keeps alive.
+    default long estimatedSize() {
+        return 64;
+    }
+
+    // Called with a command executed right after this one; returns true if
+    // this command took over its effect so both undo as one step.
+    default boolean mergeWith(Command next) {
+        return false;
+    }
+
+    // z-order key of the one shape this command acts on, for the event log;
+    // -1 if it acts on several or the shape is not in the document.
+    default long shapeId() {
+        return -1;
+    }
+}
+
+// Runs its sub-commands as one undo step, with a single cache invalidation
+// and repaint for all of them.
+class CompositeCommand implements Command {
+    private final DrawingPanel panel;
+    private final List<Command> commands;
+
+    public CompositeCommand(DrawingPanel panel, List<Command> commands) {
+        this.panel = panel;
+        this.commands = new ArrayList<>(commands);
+    }
+
+    @Override
+    public void execute() {
+        panel.beginBatch();
+        try {
+            for (Command command : commands) {
+                command.execute();
+            }
+        } finally {
+            panel.endBatch();
+        }
+    }
+
+    @Override
+    public void undo() {
+        panel.beginBatch();
+        try {
+            for (int i = commands.size() - 1; i >= 0; i--) {
+                commands.get(i).undo();
+            }
+        } finally {
+            panel.endBatch();
+        }
+    }
+
+    @Override
+    public void redo() {
+        panel.beginBatch();
+        try {
+            for (Command command : commands) {
+                command.redo();
+            }
+        } finally {
+            panel.endBatch();
+        }
+    }
+
+    @Override
+    public long estimatedSize() {
+        long size = 48 + 8L * commands.size();
+        for (Command command : commands) {
+            size += command.estimatedSize();
+        }
+        return size;
+    }
+
+    // Another drag of the same selection folds into this one.
+    @Override
+    public boolean mergeWith(Command next) {
+        if (!(next instanceof CompositeCommand other) || other.commands.size() != commands.size()) {
+            return false;
+        }
+        for (int i = 0; i < commands.size(); i++) {
+            if (!(commands.get(i) instanceof MoveCommand a) || !(other.commands.get(i) instanceof MoveCommand b)
+                    || a.getShape() != b.getShape()) {
+                return false;
+            }
+        }
+        for (int i = 0; i < commands.size(); i++) {
+            commands.get(i).mergeWith(other.commands.get(i));
+        }
+        return true;
+    }
+}
+
+class GroupCommand implements Command {
+    private final DrawingPanel panel;
+    private final ShapeGroup group = new ShapeGroup();
+    private final List<ColoredShape> members;
+    private final long[] orders;
+
+    public GroupCommand(DrawingPanel panel, List<ColoredShape> shapes) {
+        this.panel = panel;
+        this.members = new ArrayList<>(shapes);
+        // children keep their stacking order inside the group
+        members.sort(Comparator.comparingLong(panel::orderOf));
+        this.orders = new long[members.size()];
+    }
+
+    public ShapeGroup getGroup() {
+        return group;
+    }
+
+    @Override
+    public long shapeId() {
+        return panel.orderOf(group);
+    }
+
+    @Override
+    public void execute() {
+        panel.beginBatch();
+        try {
+            for (int i = 0; i < members.size(); i++) {
+                ColoredShape member = members.get(i);
+                orders[i] = panel.orderOf(member);
+                panel.removeShape(member);
+                group.add(member);
+            }
+            panel.addShape(group);
+        } finally {
+            panel.endBatch();
+        }
+    }
+
+    @Override
+    public void undo() {
+        panel.beginBatch();
+        try {
+            panel.removeShape(group);
+            for (int i = 0; i < members.size(); i++) {
+                group.remove(members.get(i));
+                panel.insertShape(members.get(i), orders[i]);
+            }
+        } finally {
+            panel.endBatch();
+        }
+    }
+
+    @Override
+    public void redo() {
+        execute();
+    }
+
+    @Override
+    public long estimatedSize() {
+        return 64 + 16L * members.size() + 384;
+    }
+}
+
+class UngroupCommand implements Command {
+    private final DrawingPanel panel;
+    private final ShapeGroup group;
+    private final AffineTransform transform;
+    private final List<ColoredShape> children;
+    // what ungroup() bakes into each child: a nested group's transform or a
+    // leaf's position
+    private final AffineTransform[] childTransforms;
+    private final double[] childPositions;
+    private long order;
+    private List<ColoredShape> released = List.of();
+
+    public UngroupCommand(DrawingPanel panel, ShapeGroup group) {
+        this.panel = panel;
+        this.group = group;
+        this.transform = group.getTransform();
+        this.children = new ArrayList<>(group.getChildren());
+        this.childTransforms = new AffineTransform[children.size()];
+        this.childPositions = new double[children.size() * 2];
+        for (int i = 0; i < children.size(); i++) {
+            ColoredShape child = children.get(i);
+            if (child instanceof ShapeGroup nested) {
+                childTransforms[i] = nested.getTransform();
+            }
+            childPositions[2 * i] = child.getX();
+            childPositions[2 * i + 1] = child.getY();
+        }
+    }
+
+    @Override
+    public long shapeId() {
+        return panel.orderOf(group);
+    }
+
+    @Override
+    public void execute() {
+        panel.beginBatch();
+        try {
+            order = panel.orderOf(group);
+            panel.removeShape(group);
+            released = group.ungroup(released.isEmpty() ? null : released);
+            for (ColoredShape shape : released) {
+                panel.addShape(shape);
+            }
+        } finally {
+            panel.endBatch();
+        }
+    }
+
+    @Override
+    public void undo() {
+        panel.beginBatch();
+        try {
+            for (ColoredShape shape : released) {
+                panel.removeShape(shape);
+            }
+            for (int i = 0; i < children.size(); i++) {
+                ColoredShape child = children.get(i);
+                if (released.get(i) != child) {
+                    // a rotated or scaled leaf comes out of its wrapper; redo
+                    // puts it back into the same one
+                    ((ShapeGroup) released.get(i)).remove(child);
+                }
+                if (childTransforms[i] != null) {
+                    ((ShapeGroup) child).setTransform(childTransforms[i]);
+                } else {
+                    child.move(childPositions[2 * i], childPositions[2 * i + 1]);
+                }
+                group.add(child);
+            }
+            group.setTransform(transform);
+            panel.insertShape(group, order);
+        } finally {
+            panel.endBatch();
+        }
+    }
+
+    @Override
+    public void redo() {
+        execute();
+    }
+
+    @Override
+    public long estimatedSize() {
+        return 96 + 24L * children.size();
+    }
+}
+
+
+class AddShapeCommand implements Command {
+    private final DrawingPanel panel;
+    private final ColoredShape shape;
+
+    public AddShapeCommand(DrawingPanel panel, ColoredShape shape) {
+        this.panel = panel;
+        this.shape = shape;
+    }
+
+    @Override
+    public long shapeId() {
+        return panel.orderOf(shape);
+    }
+
+    @Override
+    public void execute() {
+        panel.addShape(shape);
+    }
+
+    @Override
+    public long estimatedSize() {
+        // once undone, the shape lives on only in the history
+        return 32 + shape.estimatedSize();
+    }
+
+    @Override
+    public void undo() {
+        panel.removeShape(shape);
+    }
+
+    @Override
+    public void redo() {
+        execute();
+    }
+}
+
+class MoveCommand implements Command {
+    private final DrawingPanel panel;
+    private final ColoredShape shape;
+    private final double oldX, oldY;
+    private double newX, newY;
+
+    public MoveCommand(DrawingPanel panel, ColoredShape shape, double oldX, double oldY, double newX, double newY) {
+        this.panel = panel;
+        this.shape = shape;
+        this.oldX = oldX;
+        this.oldY = oldY;
+        this.newX = newX;
+        this.newY = newY;
+    }
+
+    @Override
+    public long shapeId() {
+        return panel.orderOf(shape);
+    }
+
+    @Override
+    public void execute() {
+        shape.move(newX, newY);
+        panel.shapeChanged(shape);
+    }
+
+    ColoredShape getShape() {
+        return shape;
+    }
+
+    @Override
+    public boolean mergeWith(Command next) {
+        if (next instanceof MoveCommand move && move.shape == shape) {
+            newX = move.newX;
+            newY = move.newY;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void undo() {
+        shape.move(oldX, oldY);
+        panel.shapeChanged(shape);
+    }
+
+    @Override
+    public void redo() {
+        execute();
+    }
+}
+
+class TransformCommand implements Command {
+    private final DrawingPanel panel;
+    private final ShapeGroup group;
+    private final AffineTransform oldTransform;
+    private AffineTransform newTransform;
+
+    public TransformCommand(DrawingPanel panel, ShapeGroup group, AffineTransform oldTransform, AffineTransform newTransform) {
+        this.panel = panel;
+        this.group = group;
+        this.oldTransform = oldTransform;
+        this.newTransform = newTransform;
+    }
+
+    @Override
+    public long shapeId() {
+        return panel.orderOf(group);
+    }
+
+    @Override
+    public void execute() {
+        group.setTransform(newTransform);
+        panel.shapeChanged(group);
+    }
+
+    @Override
+    public long estimatedSize() {
+        return 48 + 2 * 72;
+    }
+
+    @Override
+    public boolean mergeWith(Command next) {
+        if (next instanceof TransformCommand transform && transform.group == group) {
+            newTransform = transform.newTransform;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void undo() {
+        group.setTransform(oldTransform);
+        panel.shapeChanged(group);
+    }
+
+    @Override
+    public void redo() {
+        execute();
+    }
+}
+
+class ShapeFactory {
+    public static ColoredShape createShape(String tool, double x, double y) {
+        return switch (tool) {
+            case "Rectangle" -> new RectangleBuilder()
+                    .setPosition(x, y)
+                    .setSize(100, 50)
+                    .setColor(Color.BLACK)
+                    .setLineSize(2f)
+                    .build();
+            case "Ellipse" -> new EllipseBuilder()
+                    .setPosition(x, y)
+                    .setSize(80, 40)
+                    .setColor(Color.BLACK)
+                    .build();
+            case "Circle" -> new CircleBuilder()
+                    .setPosition(x, y)
+                    .setSize(50,50)
+                    .setColor(Color.BLACK)
+                    .setLineSize(3f)
+                    .build();
+            case "Line" -> new LineBuilder()
+                    .setStart(x, y)
+                    .setEnd(x + 100, y + 100)
+                    .setColor(Color.BLACK)
+                    .setLineSize(1.5f)
+                    .build();
+            case "ArcShape" -> new ArcBuilder()
+                    .setPosition(x, y)
+                    .setSize(100, 50)
+                    .setColor(Color.BLACK)
+                    .setLineSize(2f)
+                    .build();
+            case "Brush" -> new BrushShape(x,y);
+            default -> null;
+        };
+    }
+}
+
+
+abstract class ColoredShape {
+    protected Color color = Color.BLACK;
+    public abstract Rectangle2D getBoundingBox();
+
+    protected float lineSize = 1f;
+    private ShapeGroup parent;
+
+    ShapeGroup getParent() {
+        return parent;
+    }
+
+    void setParent(ShapeGroup parent) {
+        this.parent = parent;
+    }
+
+    // Subclasses call this after any change to their geometry so that the
+    // cached bounds of enclosing groups are dropped.
+    protected void boundsChanged() {
+        if (parent != null) {
+            parent.childChanged();
+        }
+    }
+
+    public void setColor(Color c) {
+        this.color = c;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public float getLineSize() {
+        return lineSize;
+    }
+    public boolean contains(double px, double py) {
+        return getBoundingBox().contains(px, py);
+    }
+
+    // Bounding box grown by the area the stroke can cover outside the geometry.
+    public Rectangle2D getPaintBounds() {
+        Rectangle2D b = getBoundingBox();
+        double pad = strokePadding() + 1;
+        return new Rectangle2D.Double(b.getX() - pad, b.getY() - pad, b.getWidth() + 2 * pad, b.getHeight() + 2 * pad);
+    }
+
+    protected double strokePadding() {
+        return lineSize;
+    }
+
+    public void setLineSize(float lineSize) {
+        this.lineSize = lineSize;
+        boundsChanged();
+    }
+    public abstract double getX();
+    public abstract double getY();
+    public abstract void paint(Graphics2D g2d);
+    public abstract void setBounds(double x, double y, double w, double h);
+
+    public void move(double newX, double newY) {
+    }
+
+    public abstract double getWidth();
+    public abstract double getHeight();
+
+    public void addPoint(int x, int y) {
+    }
+
+    // Approximate heap footprint: object headers, fields and geometry.
+    long estimatedSize() {
+        return 96;
+    }
+}
+// Children keep their own coordinates; the group places them with a single
+// transform, so moving, scaling or rotating a group never walks its subtree.
+class ShapeGroup extends ColoredShape{
+    private final List<ColoredShape> children = new ArrayList<>();
+    private final AffineTransform transform = new AffineTransform();
+    // Union of the children's bounds in local and in parent coordinates,
+    // dropped whenever a descendant or the transform changes.
+    private Rectangle2D localBounds;
+    private Rectangle2D localPaintBounds;
+    private Rectangle2D cachedBounds;
+    private Rectangle2D cachedPaintBounds;
+
+    @Override
+    public Rectangle2D getBoundingBox() {
+        return bounds().getBounds2D();
+    }
+
+    @Override
+    public Rectangle2D getPaintBounds() {
+        if (cachedPaintBounds == null) {
+            if (localPaintBounds == null) {
+                Rectangle2D bnds = null;
+                for (ColoredShape s : children) {
+                    bnds = bnds == null ? s.getPaintBounds() : bnds.createUnion(s.getPaintBounds());
+                }
+                localPaintBounds = bnds == null ? new Rectangle2D.Double() : bnds;
+            }
+            cachedPaintBounds = toParent(localPaintBounds);
+        }
+        return cachedPaintBounds.getBounds2D();
+    }
+
+    private Rectangle2D bounds() {
+        if (cachedBounds == null) {
+            if (localBounds == null) {
+                Rectangle2D bnds = null;
+                for (ColoredShape s : children) {
+                    bnds = bnds == null ? s.getBoundingBox() : bnds.createUnion(s.getBoundingBox());
+                }
+                localBounds = bnds == null ? new Rectangle2D.Double() : bnds;
+            }
+            cachedBounds = toParent(localBounds);
+        }
+        return cachedBounds;
+    }
+
+    private Rectangle2D toParent(Rectangle2D local) {
+        if (transform.isIdentity()) {
+            return local.getBounds2D();
+        }
+        return transform.createTransformedShape(local).getBounds2D();
+    }
+
+    // Called by a child after its geometry changed. Stops climbing once an
+    // ancestor is already invalid, since everything above it is too.
+    void childChanged() {
+        if (localBounds == null && localPaintBounds == null && cachedBounds == null && cachedPaintBounds == null) {
+            return;
+        }
+        localBounds = null;
+        localPaintBounds = null;
+        cachedBounds = null;
+        cachedPaintBounds = null;
+        boundsChanged();
+    }
+
+    private void transformChanged() {
+        cachedBounds = null;
+        cachedPaintBounds = null;
+        boundsChanged();
+    }
+
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    public void setTransform(AffineTransform t) {
+        transform.setTransform(t);
+        transformChanged();
+    }
+
+    public void rotate(double theta) {
+        Rectangle2D b = bounds();
+        transform.preConcatenate(AffineTransform.getRotateInstance(theta, b.getCenterX(), b.getCenterY()));
+        transformChanged();
+    }
+
+    @Override
+    public boolean contains(double px, double py) {
+        if (!bounds().contains(px, py)) {
+            return false;
+        }
+        if (transform.isIdentity()) {
+            return true;
+        }
+        try {
+            Point2D local = transform.inverseTransform(new Point2D.Double(px, py), null);
+            return localBounds.contains(local);
+        } catch (NoninvertibleTransformException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public double getX() {
+        return bounds().getX();
+    }
+
+    @Override
+    public double getY() {
+        return bounds().getY();
+    }
+
+    @Override
+    public void paint(Graphics2D g2d) {
+        AffineTransform saved = g2d.getTransform();
+        g2d.transform(transform);
+        for(ColoredShape s : children){
+            s.paint(g2d);
+        }
+        g2d.setTransform(saved);
+    }
+
+    @Override
+    public void setBounds(double x, double y, double w, double h) {
+        Rectangle2D bounds = bounds();
+        if (bounds.getWidth() == 0 || bounds.getHeight() == 0) {
+            move(x, y);
+            return;
+        }
+        AffineTransform resize = AffineTransform.getTranslateInstance(x, y);
+        resize.scale(w / bounds.getWidth(), h / bounds.getHeight());
+        resize.translate(-bounds.getX(), -bounds.getY());
+        transform.preConcatenate(resize);
+        transformChanged();
+    }
+    @Override
+    public void move(double newX, double newY) {
+        Rectangle2D oldBounds = bounds();
+        double dx = newX - oldBounds.getX();
+        double dy = newY - oldBounds.getY();
+
+        transform.preConcatenate(AffineTransform.getTranslateInstance(dx, dy));
+        Rectangle2D paintBounds = cachedPaintBounds;
+        cachedBounds = new Rectangle2D.Double(newX, newY, oldBounds.getWidth(), oldBounds.getHeight());
+        if (paintBounds != null) {
+            cachedPaintBounds = new Rectangle2D.Double(paintBounds.getX() + dx, paintBounds.getY() + dy,
+                    paintBounds.getWidth(), paintBounds.getHeight());
+        }
+        boundsChanged();
+    }
+    @Override
+    public double getWidth() {
+        return bounds().getWidth();
+    }
+
+    @Override
+    public double getHeight() {
+        return bounds().getHeight();
+    }
+    public void add(ColoredShape cs){
+        children.add(cs);
+        cs.setParent(this);
+        childChanged();
+    }
+    public void remove(ColoredShape cs){
+        if (children.remove(cs)) {
+            cs.setParent(null);
+            childChanged();
+        }
+    }
+
+    // Detaches every child and empties the group, baking the group transform
+    // into them. Nested groups absorb it into their own transform, leaves are
+    // moved when it is a plain translation and otherwise keep it in a
+    // single-child group so they look exactly the same afterwards.
+    public List<ColoredShape> ungroup() {
+        return ungroup(null);
+    }
+
+    // Same, but leaves that need a single-child group go back into the ones
+    // an earlier ungroup of the same children returned, so that redoing an
+    // ungroup brings back the shapes later commands were recorded against.
+    List<ColoredShape> ungroup(List<ColoredShape> previous) {
+        List<ColoredShape> released = new ArrayList<>(children.size());
+        boolean translation = (transform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0;
+        for (int i = 0; i < children.size(); i++) {
+            ColoredShape child = children.get(i);
+            child.setParent(null);
+            if (transform.isIdentity()) {
+                released.add(child);
+            } else if (child instanceof ShapeGroup group) {
+                AffineTransform t = group.getTransform();
+                t.preConcatenate(transform);
+                group.setTransform(t);
+                released.add(group);
+            } else if (translation) {
+                child.move(child.getX() + transform.getTranslateX(), child.getY() + transform.getTranslateY());
+                released.add(child);
+            } else {
+                ShapeGroup wrapper = previous != null ? (ShapeGroup) previous.get(i) : new ShapeGroup();
+                wrapper.add(child);
+                wrapper.setTransform(transform);
+                released.add(wrapper);
+            }
+        }
+        children.clear();
+        transform.setToIdentity();
+        childChanged();
+        return released;
+    }
+
+    public List<ColoredShape> getChildren(){
+        return children;
+    }
+
+    @Override
+    long estimatedSize() {
+        long size = 96 + 72 + 4L * 48 + 16 + 4L * children.size();
+        for (ColoredShape child : children) {
+            size += child.estimatedSize();
+        }
+        return size;
+    }
+}
+
+class RectangleShape extends ColoredShape {
+    private final Rectangle2D.Double rect = new Rectangle2D.Double();
+
+    public RectangleShape(double x, double y, double w, double h) {
+        rect.setFrame(x, y, w, h);
+    }
+
+    public Rectangle2D getShape() {
+        return (Rectangle2D) rect.clone();
+    }
+
+    @Override
+    public Rectangle2D getBoundingBox() {
+        return rect.getBounds2D();
+    }
+
+    @Override
+    public double getX() {
+        return rect.getX();
+    }
+
+    @Override
+    public double getY() {
+        return rect.getY();
+    }
+
+    @Override
+    public void paint(Graphics2D g2d) {
+        g2d.setColor(color);
+        g2d.setStroke(new BasicStroke(lineSize));
+        g2d.draw(rect);
+    }
+
+    @Override
+    public void setBounds(double x, double y, double w, double h) {
+        rect.setFrame(x, y, w, h);
+        boundsChanged();
+    }
+
+    @Override
+    public double getWidth() {
+        return rect.getWidth();
+    }
+
+    @Override
+    public double getHeight() {
+        return rect.getHeight();
+    }
+    @Override
+    public void move(double newX, double newY) {
+        rect.setFrame(newX, newY, rect.width, rect.height);
+        boundsChanged();
+    }
+}
+
+class EllipseShape extends ColoredShape {
+    private final Ellipse2D.Double ellipse = new Ellipse2D.Double();
+    private final boolean circle;
+
+    public EllipseShape(double x, double y, double w, double h, boolean circle) {
+        this.circle = circle;
+        ellipse.setFrame(x, y, w, h);
+    }
+
+    public Ellipse2D getShape() {
+        return (Ellipse2D) ellipse.clone();
+    }
+
+    public boolean isCircle() {
+        return circle;
+    }
+
+    @Override
+    public Rectangle2D getBoundingBox() {
+        return ellipse.getBounds2D();
+    }
+
+    @Override
+    public double getX() {
+        return ellipse.getX();
+    }
+
+    @Override
+    public double getY() {
+        return ellipse.getY();
+    }
+
+    @Override
+    public void paint(Graphics2D g2d) {
+        g2d.setColor(color);
+        g2d.setStroke(new BasicStroke(lineSize));
+        g2d.draw(ellipse);
+    }
+
+    @Override
+    public void setBounds(double x, double y, double w, double h) {
+        if (circle) {
+            double size = Math.min(w, h);
+            ellipse.setFrame(x, y, size, size);
+        } else {
+            ellipse.setFrame(x, y, w, h);
+        }
+        boundsChanged();
+    }
+    @Override
+    public void move(double newX, double newY) {
+        ellipse.setFrame(newX, newY, ellipse.width, ellipse.height);
+        boundsChanged();
+    }
+
+    @Override
+    public double getWidth() {
+        return ellipse.getWidth();
+    }
+
+    @Override
+    public double getHeight() {
+        return ellipse.getHeight();
+    }
+}
+
+class LineShape extends ColoredShape {
+    private final Line2D.Double line = new Line2D.Double();
+
+    public LineShape(double x1, double y1, double x2, double y2) {
+        line.setLine(x1, y1, x2, y2);
+    }
+
+    public Line2D getShape() {
+        return (Line2D) line.clone();
+    }
+
+    @Override
+    public Rectangle2D getBoundingBox() {
+        return line.getBounds2D();
+    }
+
+    @Override
+    public double getX() {
+        return line.getX1();
+    }
+
+    @Override
+    public double getY() {
+        return line.getY1();
+    }
+
+    @Override
+    public void paint(Graphics2D g2d) {
+        g2d.setColor(color);
+        g2d.setStroke(new BasicStroke(lineSize));
+        g2d.draw(line);
+    }
+
+    @Override
+    public void setBounds(double x, double y, double w, double h) {
+        line.setLine(x, y, x + w, y + h);
+        boundsChanged();
+    }
+
+    @Override
+    public void move(double newX, double newY) {
+        double dx = newX - line.x1;
+        double dy = newY - line.y1;
+        line.setLine(line.x1 + dx, line.y1 + dy, line.x2 + dx, line.y2 + dy);
+        boundsChanged();
+    }
+
+    @Override
+    public double getWidth() {
+        return 0;
+    }
+
+    @Override
+    public double getHeight() {
+        return 0;
+    }
+}
+
+class ArcShape extends ColoredShape {
+    private final Arc2D.Double arc = new Arc2D.Double();
+
+    public ArcShape(double x, double y, double w, double h, double start, double extent) {
+        arc.setFrame(x, y, w, h);
+        arc.setAngleStart(0);
+        arc.setAngleExtent(180);
+        arc.setArcType(Arc2D.OPEN);
+    }
+
+    public Arc2D getShape() {
+        return (Arc2D) arc.clone();
+    }
+
+    @Override
+    public Rectangle2D getBoundingBox() {
+        return arc.getBounds2D();
+    }
+
+    @Override
+    public double getX() {
+        return arc.getX();
+    }
+
+    @Override
+    public double getY() {
+        return arc.getY();
+    }
+
+    @Override
+    public void paint(Graphics2D g2d) {
+        g2d.setColor(color);
+        g2d.setStroke(new BasicStroke(lineSize));
+        g2d.draw(arc);
+    }
+
+    @Override
+    public void setBounds(double x, double y, double w, double h) {
+        arc.setFrame(x, y, w, h);
+        if (h < 0) {
+            arc.setAngleStart(180);
+            arc.setAngleExtent(-180);
+        } else {
+            arc.setAngleStart(0);
+            arc.setAngleExtent(180);
+        }
+        boundsChanged();
+    }
+    @Override
+    public void move(double newX, double newY) {
+        arc.setFrame(newX, newY, arc.width, arc.height);
+        boundsChanged();
+    }
+    @Override
+    public double getWidth() {
+        return arc.getWidth();
+    }
+
+    @Override
+    public double getHeight() {
+        return arc.getHeight();
+    }
+
+    public void setFlipped(boolean flipped) {
+        if(flipped) {
+            arc.setAngleStart(180);
+            arc.setAngleExtent(-180);
+        } else {
+            arc.setAngleStart(0);
+            arc.setAngleExtent(180);
+        }
+        boundsChanged();
+    }
+}
+
+// Freehand stroke stored as a flat float array of (x, y) pairs relative to the
+// first sample, which keeps a long stroke at 8 bytes per point and lets move()
+// shift only the origin. The Shape handed to Graphics2D iterates the array in
+// place instead of copying it into a Path2D.
+class BrushShape extends ColoredShape {
+    private float[] coords = new float[16];
+    private int size = 2;
+    private double startX, startY;
+    private float minX, minY, maxX, maxY;
+    private Shape view;
+    // Split between the two passes, since a sample the radial filter drops is
+    // near a vertex that Douglas-Peucker may drop in turn and the errors add
+    // up: a quarter for the filter, which only thins out dense samples, and
+    // the rest for Douglas-Peucker.
+    private double tolerance;
+    // Set while the last vertex is a sample closer than tolerance / 4 to the
+    // one before it; it is kept only so the stroke follows the cursor.
+    private boolean provisionalTail;
+
+    public BrushShape(double x, double y) {
+        this.startX = x;
+        this.startY = y;
+    }
+
+    // Adopts a finished stroke, e.g. one read back by NativeDocument.
+    BrushShape(double x, double y, float[] coords) {
+        this(x, y);
+        this.coords = coords;
+        this.size = coords.length & ~1;
+        computeBounds();
+    }
+
+    @Override
+    public Rectangle2D getBoundingBox() {
+        return new Rectangle2D.Double(startX + minX, startY + minY, maxX - minX, maxY - minY);
+    }
+
+    @Override
+    public double getX() {
+        return startX;
+    }
+
+    @Override
+    public double getY() {
+        return startY;
+    }
+
+    @Override
+    public void paint(Graphics2D g2d) {
+        g2d.setColor(color);
+        g2d.setStroke(new BasicStroke(lineSize));
+        g2d.draw(getShape());
+    }
+
+    public Shape getShape() {
+        if (view == null) {
+            view = new StrokeView();
+        }
+        return view;
+    }
+
+    @Override
+    public void setBounds(double x, double y, double w, double h) {
+    }
+
+    @Override
+    public void move(double newX, double newY) {
+        startX = newX;
+        startY = newY;
+        boundsChanged();
+    }
+
+    @Override
+    public double getWidth() {
+        return 0;
+    }
+
+    @Override
+    public double getHeight() {
+        return 0;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public void addPoint(double x, double y) {
+        float px = (float) (x - startX);
+        float py = (float) (y - startY);
+        if (provisionalTail) {
+            size -= 2;
+        }
+        provisionalTail = tolerance > 0 && StrokeSimplifier.isWithin(coords, size - 2, px, py, tolerance / 4);
+        if (size == coords.length) {
+            coords = Arrays.copyOf(coords, Math.max(size + 2, (size + (size >> 1)) & ~1));
+        }
+        coords[size++] = px;
+        coords[size++] = py;
+        minX = Math.min(minX, px);
+        minY = Math.min(minY, py);
+        maxX = Math.max(maxX, px);
+        maxY = Math.max(maxY, py);
+        boundsChanged();
+    }
+
+    // Finishes the stroke: removes vertices until every sample is within the
+    // tolerance of the result and drops the spare capacity left over from growing.
+    public void simplify() {
+        size = StrokeSimplifier.douglasPeucker(coords, size, tolerance * 3 / 4);
+        provisionalTail = false;
+        computeBounds();
+        trimToSize();
+        boundsChanged();
+    }
+
+    private void computeBounds() {
+        minX = minY = maxX = maxY = 0;
+        for (int i = 0; i < size; i += 2) {
+            minX = Math.min(minX, coords[i]);
+            maxX = Math.max(maxX, coords[i]);
+            minY = Math.min(minY, coords[i + 1]);
+            maxY = Math.max(maxY, coords[i + 1]);
+        }
+    }
+
+    public void trimToSize() {
+        if (coords.length != size) {
+            coords = Arrays.copyOf(coords, size);
+        }
+    }
+
+    public int getPointCount() {
+        return size / 2;
+    }
+
+    @Override
+    long estimatedSize() {
+        return 96 + 16 + 4L * coords.length;
+    }
+
+    public double getPointX(int i) {
+        return startX + coords[2 * i];
+    }
+
+    public double getPointY(int i) {
+        return startY + coords[2 * i + 1];
+    }
+
+    // Coordinate relative to the first sample, as stored.
+    float getCoord(int index) {
+        return coords[index];
+    }
+
+    @Override
+    protected double strokePadding() {
+        // sharp turns can miter out to half the miter limit (10) times the width
+        return lineSize * 5;
+    }
+
+    private final class StrokeView implements Shape {
+        @Override
+        public Rectangle getBounds() {
+            return getBounds2D().getBounds();
+        }
+
+        @Override
+        public Rectangle2D getBounds2D() {
+            return getBoundingBox();
+        }
+
+        @Override
+        public boolean contains(double x, double y) {
+            return false;
+        }
+
+        @Override
+        public boolean contains(Point2D p) {
+            return false;
+        }
+
+        @Override
+        public boolean intersects(double x, double y, double w, double h) {
+            return getBoundingBox().intersects(x, y, w, h);
+        }
+
+        @Override
+        public boolean intersects(Rectangle2D r) {
+            return intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+        }
+
+        @Override
+        public boolean contains(double x, double y, double w, double h) {
+            return false;
+        }
+
+        @Override
+        public boolean contains(Rectangle2D r) {
+            return false;
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at) {
+            return new StrokeIterator(at);
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at, double flatness) {
+            return new StrokeIterator(at);
+        }
+    }
+
+    private final class StrokeIterator implements PathIterator {
+        private final AffineTransform at;
+        private final double originX = startX, originY = startY;
+        private final float[] points = coords;
+        private final int end = size;
+        private int index;
+
+        StrokeIterator(AffineTransform at) {
+            this.at = at;
+        }
+
+        @Override
+        public int getWindingRule() {
+            return WIND_NON_ZERO;
+        }
+
+        @Override
+        public boolean isDone() {
+            return index >= end;
+        }
+
+        @Override
+        public void next() {
+            index += 2;
+        }
+
+        private final double[] buffer = new double[2];
+
+        @Override
+        public int currentSegment(float[] out) {
+            int type = currentSegment(buffer);
+            out[0] = (float) buffer[0];
+            out[1] = (float) buffer[1];
+            return type;
+        }
+
+        @Override
+        public int currentSegment(double[] out) {
+            out[0] = originX + points[index];
+            out[1] = originY + points[index + 1];
+            if (at != null) {
+                at.transform(out, 0, out, 0, 1);
+            }
+            return index == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+    }
+}
+
+class PolygonShape extends ColoredShape {
+    private final Polygon polygon = new Polygon();
+    public double lastX;
+    public double lastY;
+
+    public Polygon getShape() {
+        return new Polygon(polygon.xpoints, polygon.ypoints, polygon.npoints);
+    }
+
+    public void addPoint(int x, int y) {
+        polygon.addPoint(x, y);
+        boundsChanged();
+    }
+
+    public void closePolygon() {
+        if (polygon.npoints > 2) {
+            polygon.addPoint(polygon.xpoints[0], polygon.ypoints[0]);
+            boundsChanged();
+        }
+    }
+
+    @Override
+    public Rectangle2D getBoundingBox() {
+        return polygon.getBounds2D();
+    }
+
+    @Override
+    public double getX() {
+        return polygon.getBounds().getX();
+    }
+
+    @Override
+    public double getY() {
+        return polygon.getBounds().getY();
+    }
+
+    @Override
+    public void paint(Graphics2D g2d) {
+        g2d.setColor(color);
+        g2d.setStroke(new BasicStroke(lineSize));
+        g2d.draw(polygon);
+    }
+
+    @Override
+    protected double strokePadding() {
+        return lineSize * 5;
+    }
+
+    @Override
+    long estimatedSize() {
+        return 96 + 32 + 8L * polygon.xpoints.length;
+    }
+
+    @Override
+    public void setBounds(double x, double y, double w, double h) {
+    }
+
+    @Override
+    public double getWidth() {
+        return 0;
+    }
+
+    @Override
+    public double getHeight() {
+        return 0;
+    }
+
+}
+interface ShapeObserver {
+    void onShapeSelected(String shapeName);
+}
+
+
+
+interface ShapeBuilder {
+    ShapeBuilder setPosition(double x, double y);
+    ShapeBuilder setSize(double width, double height);
+    ShapeBuilder setColor(Color color);
+    ShapeBuilder setLineSize(float lineSize);
+    ColoredShape build();
+}
+
+
+class RectangleBuilder implements ShapeBuilder {
+    private double x, y, width, height;
+    private Color color = Color.BLACK;
+    private float lineSize = 1f;
+
+    @Override
+    public ShapeBuilder setPosition(double x, double y) {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setSize(double width, double height) {
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setColor(Color color) {
+        this.color = color;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setLineSize(float lineSize) {
+        this.lineSize = lineSize;
+        return this;
+    }
+
+    @Override
+    public ColoredShape build() {
+        RectangleShape rect = new RectangleShape(x, y, width, height);
+        rect.setColor(color);
+        rect.setLineSize(lineSize);
+        return rect;
+    }
+}
+
+
+class EllipseBuilder implements ShapeBuilder {
+    private double x, y, width, height;
+    private Color color = Color.BLACK;
+    private float lineSize = 1f;
+    private boolean isCircle = false;
+
+    public EllipseBuilder setCircle(boolean isCircle) {
+        this.isCircle = isCircle;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setPosition(double x, double y) {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setSize(double width, double height) {
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setColor(Color color) {
+        this.color = color;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setLineSize(float lineSize) {
+        this.lineSize = lineSize;
+        return this;
+    }
+
+    @Override
+    public ColoredShape build() {
+        EllipseShape ellipse = new EllipseShape(x, y, width, height, isCircle);
+        ellipse.setColor(color);
+        ellipse.setLineSize(lineSize);
+        return ellipse;
+    }
+}
+class LineBuilder implements ShapeBuilder {
+    private double x1, y1, x2, y2;
+    private Color color = Color.BLACK;
+    private float lineSize = 1f;
+
+    public LineBuilder setStart(double x, double y) {
+        this.x1 = x;
+        this.y1 = y;
+        return this;
+    }
+
+    public LineBuilder setEnd(double x, double y) {
+        this.x2 = x;
+        this.y2 = y;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setPosition(double x, double y) {
+        this.x1 = x;
+        this.y1 = y;
+        this.x2 = x;
+        this.y2 = y;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setSize(double width, double height) {
+        this.x2 = x1 + width;
+        this.y2 = y1 + height;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setColor(Color color) {
+        this.color = color;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setLineSize(float lineSize) {
+        this.lineSize = lineSize;
+        return this;
+    }
+
+    @Override
+    public ColoredShape build() {
+        LineShape line = new LineShape(x1, y1, x2, y2);
+        line.setColor(color);
+        line.setLineSize(lineSize);
+        return line;
+    }
+}
+class ArcBuilder implements ShapeBuilder {
+    private double x, y, width, height, startAngle = 0, extent = 180;
+    private Color color = Color.BLACK;
+    private float lineSize = 1f;
+
+    public ArcBuilder setAngles(double start, double extent) {
+        this.startAngle = start;
+        this.extent = extent;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setPosition(double x, double y) {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setSize(double width, double height) {
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setColor(Color color) {
+        this.color = color;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setLineSize(float lineSize) {
+        this.lineSize = lineSize;
+        return this;
+    }
+
+    @Override
+    public ColoredShape build() {
+        ArcShape arc = new ArcShape(x, y, width, height, startAngle, extent);
+        arc.setColor(color);
+        arc.setLineSize(lineSize);
+        return arc;
+    }
+}
+class BrushBuilder implements ShapeBuilder {
+    private final Path2D.Double path = new Path2D.Double();
+    private Color color = Color.BLACK;
+    private float lineSize = 1f;
+
+    public BrushBuilder addPoint(double x, double y) {
+        if (path.getCurrentPoint() == null) {
+            path.moveTo(x, y);
+        } else {
+            path.lineTo(x, y);
+        }
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setPosition(double x, double y) {
+        addPoint(x, y);
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setSize(double width, double height) {
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setColor(Color color) {
+        this.color = color;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setLineSize(float lineSize) {
+        this.lineSize = lineSize;
+        return this;
+    }
+
+    @Override
+    public ColoredShape build() {
+        BrushShape brush = new BrushShape(0, 0);
+        brush.setColor(color);
+        brush.setLineSize(lineSize);
+        return brush;
+    }
+}
+
+class CircleBuilder implements ShapeBuilder {
+    private double x, y, size;
+    private Color color = Color.BLACK;
+    private float lineSize = 1f;
+
+    @Override
+    public ShapeBuilder setPosition(double x, double y) {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setSize(double width, double height) {
+        // W przypadku koła szerokość i wysokość muszą być równe
+        this.size = Math.min(width, height);
+        return this;
+    }
+
+    public CircleBuilder setSize(double size) {
+        this.size = size;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setColor(Color color) {
+        this.color = color;
+        return this;
+    }
+
+    @Override
+    public ShapeBuilder setLineSize(float lineSize) {
+        this.lineSize = lineSize;
+        return this;
+    }
+
+    @Override
+    public ColoredShape build() {
+        EllipseShape circle = new EllipseShape(x, y, size, size, true);
+        circle.setColor(color);
+        circle.setLineSize(lineSize);
+        return circle;
+    }
+}
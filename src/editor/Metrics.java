@@ -0,0 +1,224 @@
+package editor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latency histograms for the paint path, hit testing and command
+// execution. Recording a sample is a few atomic adds, so they stay on in
+// normal use (-Deditor.metrics=false turns them off); the HUD reads them.
+// The same operations are also emitted as JFR events, which cost next to
+// nothing unless a flight recording is running:
+//   java -XX:StartFlightRecording=filename=editor.jfr ... editor.Main
+final class Metrics {
+    static final boolean ENABLED = !"false".equals(System.getProperty("editor.metrics"));
+
+    static final Histogram FRAME = new Histogram();
+    static final Histogram HIT_TEST = new Histogram();
+    static final Histogram COMMAND = new Histogram();
+    static final Histogram TILE = new Histogram();
+    static final LongAdder SHAPES_PAINTED = new LongAdder();
+    // Shapes a paint pass skipped because they were outside the area it
+    // painted: outside a tile being rendered, or outside the clip.
+    static final LongAdder SHAPES_CULLED = new LongAdder();
+
+    // What the last frame did, for the HUD. A shape counts as painted or
+    // culled once for every tile rendered and once in the clipped pass over
+    // the shapes being edited.
+    record Frame(long nanos, long painted, long culled, long tileHits, long tileMisses) {
+    }
+
+    // ColoredShape.paint by concrete shape type, LazyShapes by what they decode to.
+    private static final Map<String, Histogram> PAINT_BY_TYPE = new ConcurrentSkipListMap<>();
+    private static final ClassValue<Histogram> PAINT_HISTOGRAM = new ClassValue<>() {
+        @Override
+        protected Histogram computeValue(Class<?> type) {
+            return PAINT_BY_TYPE.computeIfAbsent(type.getSimpleName(), name -> new Histogram());
+        }
+    };
+
+    // End times of the last frames, for the frame rate; EDT only.
+    private static final long[] frameEnds = new long[128];
+    private static int frameCount;
+    private static Frame lastFrame = new Frame(0, 0, 0, 0, 0);
+
+    private Metrics() {
+    }
+
+    static void paint(ColoredShape shape, Graphics2D g2d) {
+        if (!ENABLED) {
+            shape.paint(g2d);
+            return;
+        }
+        ColoredShape target = shape instanceof LazyShape lazy ? lazy.resolve() : shape;
+        long start = System.nanoTime();
+        target.paint(g2d);
+        PAINT_HISTOGRAM.get(target.getClass()).record(System.nanoTime() - start);
+        SHAPES_PAINTED.increment();
+    }
+
+    static void culled(long shapes) {
+        if (ENABLED) {
+            SHAPES_CULLED.add(shapes);
+        }
+    }
+
+    static Map<String, Histogram> paintByType() {
+        return PAINT_BY_TYPE;
+    }
+
+    static void frame(long start, long end, long painted, long culled, long tileHits, long tileMisses) {
+        if (!ENABLED) {
+            return;
+        }
+        FRAME.record(end - start);
+        frameEnds[frameCount++ % frameEnds.length] = end;
+        lastFrame = new Frame(end - start, painted, culled, tileHits, tileMisses);
+    }
+
+    static Frame lastFrame() {
+        return lastFrame;
+    }
+
+    // Frames that ended within the last second.
+    static int framesPerSecond() {
+        long since = System.nanoTime() - 1_000_000_000L;
+        int frames = 0;
+        for (int i = 1; i <= Math.min(frameCount, frameEnds.length); i++) {
+            if (frameEnds[(frameCount - i) % frameEnds.length] < since) {
+                break;
+            }
+            frames++;
+        }
+        return frames;
+    }
+
+    // Log-linear buckets: four per power of two, so a percentile is off by
+    // at most a quarter of its value, in 2 KB per histogram.
+    static final class Histogram {
+        private static final int BUCKETS = 252;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts.incrementAndGet(bucket(value));
+            total.increment();
+            if (value > max.get()) {
+                max.accumulateAndGet(value, Math::max);
+            }
+        }
+
+        long count() {
+            return total.sum();
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        // Upper bound of the bucket holding the q-th quantile, in nanoseconds.
+        long percentile(double q) {
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                n += counts.get(i);
+            }
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(max.get(), lowerBound(i + 1) - 1);
+                }
+            }
+            return max.get();
+        }
+
+        private static int bucket(long value) {
+            if (value < 4) {
+                return (int) value;
+            }
+            int log = 63 - Long.numberOfLeadingZeros(value);
+            return 4 * (log - 1) + (int) ((value >>> (log - 2)) & 3);
+        }
+
+        private static long lowerBound(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            if (bucket >= BUCKETS) {
+                return Long.MAX_VALUE;
+            }
+            return (long) (4 + bucket % 4) << (bucket / 4 - 1);
+        }
+    }
+
+    @Name("editor.Frame")
+    @Label("Canvas Frame")
+    @Category({"Vector Editor", "Painting"})
+    @Description("One DrawingPanel.paintComponent call")
+    static final class FrameEvent extends Event {
+        @Label("Clip Width")
+        int clipWidth;
+        @Label("Clip Height")
+        int clipHeight;
+        @Label("Shapes Painted")
+        long shapesPainted;
+        @Label("Shapes Culled")
+        long shapesCulled;
+        @Label("Tiles From Cache")
+        long tileHits;
+        @Label("Tiles Rendered")
+        long tileMisses;
+    }
+
+    @Name("editor.TileRender")
+    @Label("Tile Render")
+    @Category({"Vector Editor", "Painting"})
+    @Description("Rasterizing one tile of the static layer")
+    static final class TileRenderEvent extends Event {
+        @Label("Column")
+        int column;
+        @Label("Row")
+        int row;
+        @Label("Shapes")
+        int shapes;
+    }
+
+    @Name("editor.HitTest")
+    @Label("Hit Test")
+    @Category("Vector Editor")
+    @Description("DrawingPanel.findShapeAt")
+    static final class HitTestEvent extends Event {
+        @Label("X")
+        double x;
+        @Label("Y")
+        double y;
+        @Label("Hit")
+        boolean hit;
+    }
+
+    @Name("editor.Command")
+    @Label("Command")
+    @Category("Vector Editor")
+    @Description("CommandManager.executeCommand")
+    static final class CommandEvent extends Event {
+        @Label("Command")
+        String command;
+        @Label("Merged")
+        boolean merged;
+    }
+}
@@ -0,0 +1,609 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// The editor's own file format. Layout, all big-endian:
+//
+//   header   magic, version, flags, shape count, index offset  (24 bytes)
+//   records  one per top-level shape: tag, ARGB, line size, geometry;
+//            a group record holds its transform and its children's records
+//   index    per top-level shape: record offset and paint bounds as floats
+//            rounded outwards
+//
+// Loading maps the file and reads only the header and index. Every top-level
+// shape becomes a LazyShape that decodes its record the first time it has to
+// be painted or hit-tested, so opening a huge document costs roughly one
+// index entry per shape.
+final class NativeDocument {
+    static final String EXTENSION = "vgd";
+    static final int MAGIC = 0x56474431; // "VGD1"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    private static final int INDEX_ENTRY_SIZE = 24;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    static final byte RECTANGLE = 1;
+    static final byte ELLIPSE = 2;
+    static final byte CIRCLE = 3;
+    static final byte LINE = 4;
+    static final byte ARC = 5;
+    static final byte BRUSH = 6;
+    static final byte POLYGON = 7;
+    static final byte GROUP = 8;
+
+    private NativeDocument() {
+    }
+
+    public static List<ColoredShape> load(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a document: " + path);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Documents larger than 2 GB are not supported: " + path);
+            }
+            // The mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a document: " + path);
+        }
+        short version = buffer.getShort(4);
+        if (version > VERSION) {
+            throw new IOException("Document version " + version + " is newer than this editor supports");
+        }
+        int count = buffer.getInt(8);
+        long indexOffset = buffer.getLong(16);
+        if (count < 0 || indexOffset < HEADER_SIZE || indexOffset + (long) count * INDEX_ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException("Corrupt document index: " + path);
+        }
+        List<ColoredShape> shapes = new ArrayList<>(count);
+        int entry = (int) indexOffset;
+        for (int i = 0; i < count; i++, entry += INDEX_ENTRY_SIZE) {
+            long offset = buffer.getLong(entry);
+            // records are contiguous, so each one ends where the next begins
+            long end = i + 1 < count ? buffer.getLong(entry + INDEX_ENTRY_SIZE) : indexOffset;
+            // checked here, since a bad record would otherwise only fail
+            // when it is decoded, while painting
+            if (offset < HEADER_SIZE || end <= offset || end > indexOffset) {
+                throw new IOException("Corrupt document index: " + path);
+            }
+            float minX = buffer.getFloat(entry + 8), minY = buffer.getFloat(entry + 12);
+            float maxX = buffer.getFloat(entry + 16), maxY = buffer.getFloat(entry + 20);
+            shapes.add(new LazyShape(buffer, (int) offset, (int) (end - offset),
+                    new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY)));
+        }
+        return shapes;
+    }
+
+    // shapes can be a DocumentVersion, so a snapshot is saved without
+    // copying it into a list first.
+    public static void save(Iterable<ColoredShape> shapes, Path path) throws IOException {
+        writeAtomically(path, encoder -> {
+            for (ColoredShape shape : shapes) {
+                encoder.writeEntry(shape);
+            }
+        });
+    }
+
+    // Writes records that were encoded earlier, e.g. by DocumentJournal.
+    static void saveEncoded(Collection<Encoded> shapes, Path path) throws IOException {
+        writeAtomically(path, encoder -> {
+            for (Encoded shape : shapes) {
+                encoder.writeEntry(shape);
+            }
+        });
+    }
+
+    // Captures a shape's current state as a standalone record.
+    static Encoded encode(ColoredShape shape) {
+        if (shape instanceof LazyShape lazy) {
+            Rectangle2D b = lazy.getPaintBounds();
+            return new Encoded(lazy.record(), (float) b.getMinX(), (float) b.getMinY(), (float) b.getMaxX(), (float) b.getMaxY());
+        }
+        Encoder encoder = new Encoder(null, ByteBuffer.allocate(256));
+        try {
+            encoder.writeShape(shape);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        Rectangle2D b = shape.getPaintBounds();
+        return new Encoded(encoder.buffer.flip(), floor(b.getMinX()), floor(b.getMinY()), ceil(b.getMaxX()), ceil(b.getMaxY()));
+    }
+
+    // Read-only copy of a shape's current state, for DocumentVersion: its
+    // record on the heap behind a LazyShape. Lazily loaded shapes are
+    // read-only already and are returned as they are.
+    static ColoredShape freeze(ColoredShape shape) {
+        if (shape instanceof LazyShape) {
+            return shape;
+        }
+        Encoded encoded = encode(shape);
+        // trimmed, since the encoder's buffer is mostly slack for small shapes
+        ByteBuffer record = ByteBuffer.allocate(encoded.record().remaining()).put(encoded.record()).flip();
+        return new LazyShape(record, 0, record.limit(), new Rectangle2D.Double(encoded.minX(), encoded.minY(),
+                encoded.maxX() - encoded.minX(), encoded.maxY() - encoded.minY()));
+    }
+
+    // freeze() for many shapes at once, with all records in one shared
+    // buffer instead of one per shape.
+    static List<ColoredShape> freezeAll(List<ColoredShape> shapes) {
+        Encoder encoder = new Encoder(null, ByteBuffer.allocate(Math.max(256, shapes.size() * 48)));
+        try {
+            for (ColoredShape shape : shapes) {
+                encoder.writeEntry(shape);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = encoder.buffer;
+        List<ColoredShape> frozen = new ArrayList<>(shapes.size());
+        for (int i = 0; i < encoder.count; i++) {
+            int offset = (int) encoder.offsets[i];
+            int end = i + 1 < encoder.count ? (int) encoder.offsets[i + 1] : buffer.position();
+            float[] b = encoder.bounds;
+            frozen.add(new LazyShape(buffer, offset, end - offset,
+                    new Rectangle2D.Double(b[4 * i], b[4 * i + 1], b[4 * i + 2] - b[4 * i], b[4 * i + 3] - b[4 * i + 1])));
+        }
+        return frozen;
+    }
+
+    // Only the index bounds, for changes that do not re-encode the record.
+    static Encoded encodeBounds(ColoredShape shape) {
+        Rectangle2D b = shape.getPaintBounds();
+        return new Encoded(null, floor(b.getMinX()), floor(b.getMinY()), ceil(b.getMaxX()), ceil(b.getMaxY()));
+    }
+
+    // Copy of a group record with its transform replaced.
+    static ByteBuffer withTransform(ByteBuffer groupRecord, AffineTransform transform) {
+        ByteBuffer copy = ByteBuffer.allocate(groupRecord.remaining());
+        copy.put(groupRecord.duplicate()).flip();
+        if (copy.get(0) != GROUP) {
+            throw new IllegalArgumentException("Not a group record");
+        }
+        double[] matrix = new double[6];
+        transform.getMatrix(matrix);
+        for (int i = 0; i < 6; i++) {
+            copy.putDouble(9 + 8 * i, matrix[i]);
+        }
+        return copy;
+    }
+
+    private interface Body {
+        void write(Encoder encoder) throws IOException;
+    }
+
+    // Writes to a temporary file next to the target and moves it into place,
+    // so a failed save never leaves a truncated document behind.
+    private static void writeAtomically(Path path, Body body) throws IOException {
+        Path target = path.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                Encoder encoder = new Encoder(bytes -> {
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                }, ByteBuffer.allocateDirect(BUFFER_SIZE));
+                encoder.buffer.position(HEADER_SIZE);
+                body.write(encoder);
+                ByteBuffer header = encoder.finish();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(false);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static float floor(double v) {
+        float f = (float) v;
+        return f > v ? Math.nextDown(f) : f;
+    }
+
+    private static float ceil(double v) {
+        float f = (float) v;
+        return f < v ? Math.nextUp(f) : f;
+    }
+
+    // Reads the record starting at the buffer's position and leaves the
+    // position after it. The buffer's limit bounds the record, so a count
+    // that does not fit is reported as corrupt instead of reading into the
+    // next record or allocating whatever it claims.
+    static ColoredShape decode(ByteBuffer in) throws IOException {
+        try {
+            return read(in);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt document record: truncated");
+        }
+    }
+
+    private static ColoredShape read(ByteBuffer in) throws IOException {
+        byte tag = in.get();
+        Color color = new Color(in.getInt(), true);
+        float lineSize = in.getFloat();
+        ColoredShape shape = switch (tag) {
+            case RECTANGLE -> new RectangleShape(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+            case ELLIPSE, CIRCLE -> new EllipseShape(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), tag == CIRCLE);
+            case LINE -> new LineShape(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+            case ARC -> {
+                ArcShape arc = new ArcShape(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), 0, 180);
+                arc.setFlipped(in.get() != 0);
+                yield arc;
+            }
+            case BRUSH -> {
+                double x = in.getDouble(), y = in.getDouble();
+                int length = in.getInt();
+                if (length < 0 || length % 2 != 0 || length > in.remaining() / 4) {
+                    throw new IOException("Corrupt document record: " + length + " brush coordinates");
+                }
+                float[] coords = new float[length];
+                in.asFloatBuffer().get(coords);
+                in.position(in.position() + coords.length * 4);
+                yield new BrushShape(x, y, coords);
+            }
+            case POLYGON -> {
+                PolygonShape polygon = new PolygonShape();
+                int points = in.getInt();
+                if (points < 0 || points > in.remaining() / 8) {
+                    throw new IOException("Corrupt document record: " + points + " polygon points");
+                }
+                for (int i = 0; i < points; i++) {
+                    polygon.addPoint(in.getInt(), in.getInt());
+                }
+                yield polygon;
+            }
+            case GROUP -> {
+                double[] matrix = new double[6];
+                for (int i = 0; i < 6; i++) {
+                    matrix[i] = in.getDouble();
+                }
+                ShapeGroup group = new ShapeGroup();
+                int children = in.getInt();
+                // every record takes at least a tag, a color and a line size
+                if (children < 0 || children > in.remaining() / 9) {
+                    throw new IOException("Corrupt document record: " + children + " group children");
+                }
+                for (int i = 0; i < children; i++) {
+                    group.add(read(in));
+                }
+                group.setTransform(new AffineTransform(matrix));
+                yield group;
+            }
+            default -> throw new IOException("Corrupt document record: unknown shape tag " + tag);
+        };
+        shape.setColor(color);
+        shape.setLineSize(lineSize);
+        return shape;
+    }
+
+    // A top-level record together with the paint bounds for its index entry.
+    record Encoded(ByteBuffer record, float minX, float minY, float maxX, float maxY) {
+    }
+
+    private interface Sink {
+        void write(ByteBuffer bytes) throws IOException;
+    }
+
+    // Serializes shapes into a buffer that is drained into the sink whenever
+    // it fills up; without a sink the buffer grows instead.
+    private static final class Encoder {
+        private final Sink sink;
+        private ByteBuffer buffer;
+        private long written;
+        private int count;
+        private long[] offsets = new long[64];
+        private float[] bounds = new float[256];
+
+        Encoder(Sink sink, ByteBuffer buffer) {
+            this.sink = sink;
+            this.buffer = buffer;
+        }
+
+        void writeEntry(ColoredShape shape) throws IOException {
+            Rectangle2D b = shape.getPaintBounds();
+            addIndexEntry(floor(b.getMinX()), floor(b.getMinY()), ceil(b.getMaxX()), ceil(b.getMaxY()));
+            writeShape(shape);
+        }
+
+        void writeEntry(Encoded shape) throws IOException {
+            addIndexEntry(shape.minX(), shape.minY(), shape.maxX(), shape.maxY());
+            put(shape.record().duplicate());
+        }
+
+        private void addIndexEntry(float minX, float minY, float maxX, float maxY) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                bounds = Arrays.copyOf(bounds, count * 8);
+            }
+            offsets[count] = position();
+            bounds[4 * count] = minX;
+            bounds[4 * count + 1] = minY;
+            bounds[4 * count + 2] = maxX;
+            bounds[4 * count + 3] = maxY;
+            count++;
+        }
+
+        // Appends the index and returns the header that goes in front of it.
+        ByteBuffer finish() throws IOException {
+            long indexOffset = position();
+            for (int i = 0; i < count; i++) {
+                ensure(INDEX_ENTRY_SIZE);
+                buffer.putLong(offsets[i]);
+                for (int k = 0; k < 4; k++) {
+                    buffer.putFloat(bounds[4 * i + k]);
+                }
+            }
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(count).putInt(0).putLong(indexOffset);
+            return header.flip();
+        }
+
+        private void writeShape(ColoredShape shape) throws IOException {
+            if (shape instanceof LazyShape lazy) {
+                // never edited, so still byte-for-byte what was loaded
+                put(lazy.record());
+                return;
+            }
+            ensure(9);
+            buffer.put(tagOf(shape));
+            buffer.putInt(shape.getColor().getRGB());
+            buffer.putFloat(shape.getLineSize());
+            if (shape instanceof ShapeGroup group) {
+                double[] matrix = new double[6];
+                group.getTransform().getMatrix(matrix);
+                List<ColoredShape> children = group.getChildren();
+                ensure(52);
+                for (double m : matrix) {
+                    buffer.putDouble(m);
+                }
+                buffer.putInt(children.size());
+                for (ColoredShape child : children) {
+                    writeShape(child);
+                }
+            } else if (shape instanceof LineShape line) {
+                Line2D l = line.getShape();
+                putDoubles(l.getX1(), l.getY1(), l.getX2(), l.getY2());
+            } else if (shape instanceof ArcShape arc) {
+                putDoubles(arc.getX(), arc.getY(), arc.getWidth(), arc.getHeight());
+                ensure(1);
+                buffer.put((byte) (arc.getShape().getAngleExtent() < 0 ? 1 : 0));
+            } else if (shape instanceof BrushShape brush) {
+                int length = brush.getPointCount() * 2;
+                putDoubles(brush.getX(), brush.getY());
+                ensure(4);
+                buffer.putInt(length);
+                for (int i = 0; i < length; i++) {
+                    ensure(4);
+                    buffer.putFloat(brush.getCoord(i));
+                }
+            } else if (shape instanceof PolygonShape polygonShape) {
+                Polygon polygon = polygonShape.getShape();
+                ensure(4);
+                buffer.putInt(polygon.npoints);
+                for (int i = 0; i < polygon.npoints; i++) {
+                    ensure(8);
+                    buffer.putInt(polygon.xpoints[i]).putInt(polygon.ypoints[i]);
+                }
+            } else {
+                putDoubles(shape.getX(), shape.getY(), shape.getWidth(), shape.getHeight());
+            }
+        }
+
+        private static byte tagOf(ColoredShape shape) {
+            if (shape instanceof ShapeGroup) {
+                return GROUP;
+            } else if (shape instanceof RectangleShape) {
+                return RECTANGLE;
+            } else if (shape instanceof EllipseShape ellipse) {
+                return ellipse.isCircle() ? CIRCLE : ELLIPSE;
+            } else if (shape instanceof LineShape) {
+                return LINE;
+            } else if (shape instanceof ArcShape) {
+                return ARC;
+            } else if (shape instanceof BrushShape) {
+                return BRUSH;
+            } else if (shape instanceof PolygonShape) {
+                return POLYGON;
+            }
+            throw new IllegalArgumentException("Cannot save " + shape.getClass().getSimpleName());
+        }
+
+        private void putDoubles(double... values) throws IOException {
+            ensure(values.length * 8);
+            for (double v : values) {
+                buffer.putDouble(v);
+            }
+        }
+
+        private void put(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                if (!buffer.hasRemaining()) {
+                    makeRoom(bytes.remaining());
+                }
+                int n = Math.min(bytes.remaining(), buffer.remaining());
+                buffer.put(buffer.position(), bytes, bytes.position(), n);
+                buffer.position(buffer.position() + n);
+                bytes.position(bytes.position() + n);
+            }
+        }
+
+        private long position() {
+            return written + buffer.position();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                makeRoom(bytes);
+            }
+        }
+
+        private void makeRoom(int bytes) throws IOException {
+            if (sink != null) {
+                flush();
+            } else {
+                buffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                        .put(buffer.flip());
+            }
+        }
+
+        private void flush() throws IOException {
+            if (sink == null) {
+                return;
+            }
+            buffer.flip();
+            written += buffer.remaining();
+            sink.write(buffer);
+            buffer.clear();
+        }
+    }
+}
+
+// Stand-in for a shape that is still encoded, in a mapped document or as a
+// frozen copy in a DocumentVersion. Painting and hit-testing decode the
+// record on first use and keep the result softly reachable, so a huge
+// document that is only scrolled through can drop shapes that went off
+// screen. The proxy is read-only: DrawingPanel swaps in the
+// decoded shape before anything edits it.
+class LazyShape extends ColoredShape {
+    private final ByteBuffer source;
+    private final int offset;
+    private final int length;
+    private final Rectangle2D paintBounds;
+    private volatile SoftReference<ColoredShape> decoded;
+    private volatile boolean reported;
+
+    LazyShape(ByteBuffer source, int offset, int length, Rectangle2D paintBounds) {
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.paintBounds = paintBounds;
+    }
+
+    ColoredShape resolve() {
+        SoftReference<ColoredShape> ref = decoded;
+        ColoredShape shape = ref == null ? null : ref.get();
+        if (shape == null) {
+            shape = decodeRecord();
+            decoded = new SoftReference<>(shape);
+        }
+        return shape;
+    }
+
+    // A fresh copy of the shape. A record that does not decode comes back as
+    // an empty group, so a damaged file loses the shapes it damaged instead
+    // of failing every tile that shows one; the first failure is reported.
+    ColoredShape decodeRecord() {
+        try {
+            // a private view, so tiles can decode concurrently
+            return NativeDocument.decode(record());
+        } catch (IOException e) {
+            if (!reported) {
+                reported = true;
+                System.err.println("Skipping the shape at byte " + offset + ": " + e.getMessage());
+            }
+            return new ShapeGroup();
+        }
+    }
+
+    // The still encoded record, as a read-only view of the mapped file.
+    ByteBuffer record() {
+        return source.asReadOnlyBuffer().position(offset).limit(offset + length).slice();
+    }
+
+    @Override
+    public Rectangle2D getBoundingBox() {
+        return resolve().getBoundingBox();
+    }
+
+    @Override
+    public Rectangle2D getPaintBounds() {
+        return paintBounds.getBounds2D();
+    }
+
+    @Override
+    public boolean contains(double px, double py) {
+        return paintBounds.contains(px, py) && resolve().contains(px, py);
+    }
+
+    @Override
+    public Color getColor() {
+        return new Color(source.getInt(offset + 1), true);
+    }
+
+    @Override
+    public float getLineSize() {
+        return source.getFloat(offset + 5);
+    }
+
+    @Override
+    public void setColor(Color c) {
+        throw new UnsupportedOperationException("Lazily loaded shapes are read-only");
+    }
+
+    @Override
+    public void setLineSize(float lineSize) {
+        throw new UnsupportedOperationException("Lazily loaded shapes are read-only");
+    }
+
+    @Override
+    public double getX() {
+        return resolve().getX();
+    }
+
+    @Override
+    public double getY() {
+        return resolve().getY();
+    }
+
+    @Override
+    public void paint(Graphics2D g2d) {
+        resolve().paint(g2d);
+    }
+
+    @Override
+    public void setBounds(double x, double y, double w, double h) {
+        throw new UnsupportedOperationException("Lazily loaded shapes are read-only");
+    }
+
+    @Override
+    public void move(double newX, double newY) {
+        throw new UnsupportedOperationException("Lazily loaded shapes are read-only");
+    }
+
+    @Override
+    public double getWidth() {
+        return resolve().getWidth();
+    }
+
+    @Override
+    public double getHeight() {
+        return resolve().getHeight();
+    }
+}
@@ -0,0 +1,340 @@
+package editor;
+
+import org.w3c.dom.NodeList;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Rasterizes a DocumentSnapshot at any scale. The output is cut into square
+// tiles that worker threads render concurrently, straight into their part of
+// the image. Shapes are binned to the tiles their paint bounds touch once up
+// front, so each tile only draws what can reach it. Files are written a band
+// of tile rows at a time, so gigapixel exports fit in a small heap.
+final class RasterExporter {
+    static final int TILE_SIZE = 512;
+    // document units per inch, so scale 1 is 96 DPI
+    static final double BASE_DPI = 96;
+    // pixels rendered ahead of the encoder when streaming to a file
+    private static final long BAND_BUDGET = Long.getLong("editor.exportBandBudget", 64L << 20);
+    private static final ForkJoinPool EXPORT_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    interface Progress {
+        // May throw to stop the export, e.g. a CancellationException.
+        void update(long done, long total);
+    }
+
+    private final DocumentSnapshot document;
+    private final double scale;
+    private final int threads;
+    private final int width, height;
+    private final int columns, rows;
+    private ColoredShape[] shapes;
+    // shapes binned per tile in z-order: cells[start[t] .. start[t + 1]) hold
+    // the indices of the shapes that tile t draws
+    private int[] start;
+    private int[] cells;
+
+    RasterExporter(DocumentSnapshot document, double scale) {
+        this(document, scale, EXPORT_POOL.getParallelism());
+    }
+
+    // threads caps how many tiles render at once; with 1 they render on the
+    // calling thread, e.g. when the caller already runs several exports.
+    RasterExporter(DocumentSnapshot document, double scale, int threads) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        }
+        this.document = document;
+        this.scale = scale;
+        this.threads = Math.max(1, Math.min(threads, EXPORT_POOL.getParallelism()));
+        long w = (long) Math.ceil(document.width() * scale);
+        long h = (long) Math.ceil(document.height() * scale);
+        if (w < 1 || h < 1 || w > Integer.MAX_VALUE - TILE_SIZE || h > Integer.MAX_VALUE - TILE_SIZE) {
+            throw new IllegalArgumentException("Cannot export a " + w + "x" + h + " image");
+        }
+        this.width = (int) w;
+        this.height = (int) h;
+        this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public BufferedImage render(int imageType, Progress progress) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        renderRows(image, 0, rows, progress);
+        return image;
+    }
+
+    // Encodes the image into file without ever holding all of it: the
+    // writer reads pixels through a BandBuffer, which renders one band of
+    // tile rows at a time as the encoder reaches it and reuses the same
+    // band image for the next one. Peak memory is one band, whatever the
+    // output size.
+    public void write(String format, double dpi, File file, Progress progress) throws IOException {
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IOException("Cannot export more than " + Integer.MAX_VALUE + " pixels, got " + width + "x" + height);
+        }
+        boolean opaque = format.equalsIgnoreCase("jpeg") || format.equalsIgnoreCase("jpg") || format.equalsIgnoreCase("bmp");
+        int bandRows = (int) Math.max(1, Math.min(rows, BAND_BUDGET / ((long) width * TILE_SIZE * 4)));
+        BufferedImage band = new BufferedImage(width, bandRows * TILE_SIZE,
+                opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        DirectColorModel model = (DirectColorModel) band.getColorModel();
+        BandBuffer buffer = new BandBuffer(band, bandRows, progress);
+        WritableRaster raster = Raster.createWritableRaster(model.createCompatibleSampleModel(width, height), buffer, null);
+        write(new BufferedImage(model, raster, false, null), format, dpi, file);
+    }
+
+    // Pixel data of the whole image as the encoder sees it. Reads are served
+    // from the current band; touching a row outside it renders the band that
+    // holds it. Encoders read top to bottom, so every band is rendered once.
+    private final class BandBuffer extends DataBuffer {
+        private final BufferedImage band;
+        private final int[] pixels;
+        private final int bandRows;
+        private final int bandHeight;
+        private final Progress progress;
+        private int first = Integer.MAX_VALUE;
+        private int last = Integer.MIN_VALUE;
+
+        BandBuffer(BufferedImage band, int bandRows, Progress progress) {
+            super(TYPE_INT, width * height);
+            this.band = band;
+            this.pixels = ((DataBufferInt) band.getRaster().getDataBuffer()).getData();
+            this.bandRows = bandRows;
+            this.bandHeight = bandRows * TILE_SIZE;
+            this.progress = progress;
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            if (i < first || i >= last) {
+                load(i / width / bandHeight);
+            }
+            return pixels[i - first];
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            throw new UnsupportedOperationException("Exported images are read-only");
+        }
+
+        private void load(int index) {
+            int fromRow = index * bandRows;
+            int toRow = Math.min(rows, fromRow + bandRows);
+            long before = (long) fromRow * columns;
+            long total = (long) rows * columns;
+            try {
+                renderRows(band, fromRow, toRow, (done, count) -> progress.update(before + done, total));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            first = index * bandHeight * width;
+            last = (int) Math.min((long) width * height, (long) first + (long) bandHeight * width);
+        }
+    }
+
+    // Renders the tile rows [fromRow, toRow) into target, whose pixel (0, 0)
+    // is the top-left corner of fromRow.
+    void renderRows(BufferedImage target, int fromRow, int toRow, Progress progress) throws IOException {
+        bin();
+        int count = (toRow - fromRow) * columns;
+        int workers = Math.min(count, threads);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        Callable<Void> worker = () -> {
+            try {
+                for (int t = next.getAndIncrement(); t < count; t = next.getAndIncrement()) {
+                    int row = fromRow + t / columns;
+                    int col = t % columns;
+                    renderTile(target, col, row, fromRow * TILE_SIZE);
+                    progress.update(done.incrementAndGet(), count);
+                }
+            } catch (RuntimeException | Error e) {
+                // stop the other workers too, they pull from the same counter
+                next.set(count);
+                throw e;
+            }
+            return null;
+        };
+        if (workers <= 1) {
+            try {
+                worker.call();
+            } catch (RuntimeException | IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Tile rendering failed", e);
+            }
+            return;
+        }
+        List<Future<Void>> results = EXPORT_POOL.invokeAll(Collections.nCopies(workers, worker));
+        try {
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Tile rendering failed", e.getCause());
+        }
+    }
+
+    private void renderTile(BufferedImage target, int col, int row, int originY) {
+        int x = col * TILE_SIZE;
+        int y = row * TILE_SIZE;
+        int w = Math.min(TILE_SIZE, width - x);
+        int h = Math.min(TILE_SIZE, height - y);
+        // tiles write disjoint pixels of the shared raster
+        Graphics2D g2d = target.getSubimage(x, y - originY, w, h).createGraphics();
+        try {
+            g2d.setColor(document.background());
+            g2d.fillRect(0, 0, w, h);
+            g2d.translate(-x, -y);
+            g2d.scale(scale, scale);
+            int tile = row * columns + col;
+            for (int i = start[tile]; i < start[tile + 1]; i++) {
+                shapes[cells[i]].paint(g2d);
+            }
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    // Two passes over the snapshot: count the shapes per tile, then fill
+    // them in, which keeps every tile's list in z-order.
+    private void bin() {
+        if (shapes != null) {
+            return;
+        }
+        shapes = new ColoredShape[document.shapes().size()];
+        int[] range = new int[shapes.length * 4];
+        int[] counts = new int[columns * rows + 1];
+        int n = 0;
+        for (ColoredShape shape : document.shapes()) {
+            Rectangle2D b = shape.getPaintBounds();
+            int minCol = Math.max(0, (int) Math.floor(b.getMinX() * scale / TILE_SIZE));
+            int maxCol = Math.min(columns - 1, (int) Math.floor(b.getMaxX() * scale / TILE_SIZE));
+            int minRow = Math.max(0, (int) Math.floor(b.getMinY() * scale / TILE_SIZE));
+            int maxRow = Math.min(rows - 1, (int) Math.floor(b.getMaxY() * scale / TILE_SIZE));
+            if (minCol > maxCol || minRow > maxRow) {
+                continue;
+            }
+            range[4 * n] = minCol;
+            range[4 * n + 1] = maxCol;
+            range[4 * n + 2] = minRow;
+            range[4 * n + 3] = maxRow;
+            shapes[n++] = shape;
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    counts[row * columns + col + 1]++;
+                }
+            }
+        }
+        for (int t = 1; t < counts.length; t++) {
+            counts[t] += counts[t - 1];
+        }
+        start = counts;
+        cells = new int[counts[counts.length - 1]];
+        int[] fill = Arrays.copyOf(counts, counts.length - 1);
+        for (int i = 0; i < n; i++) {
+            for (int row = range[4 * i + 2]; row <= range[4 * i + 3]; row++) {
+                for (int col = range[4 * i]; col <= range[4 * i + 1]; col++) {
+                    cells[fill[row * columns + col]++] = i;
+                }
+            }
+        }
+    }
+
+    // Writes the image with its resolution recorded in the file, so other
+    // programs print it at the intended size.
+    static void write(BufferedImage image, String format, double dpi, File file) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("Unsupported format: " + format);
+        }
+        ImageWriter writer = writers.next();
+        Files.deleteIfExists(file.toPath());
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            IIOMetadata metadata = resolution(writer, ImageTypeSpecifier.createFromRenderedImage(image), param, dpi);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // The standard metadata tree would be the portable way, but the JDK's
+    // PNG and JPEG plugins misread its pixel size, so each gets its own
+    // native density field.
+    static IIOMetadata resolution(ImageWriter writer, ImageTypeSpecifier type, ImageWriteParam param, double dpi) {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(type, param);
+        if (metadata == null || metadata.isReadOnly()) {
+            return metadata;
+        }
+        String format = metadata.getNativeMetadataFormatName();
+        try {
+            if ("javax_imageio_png_1.0".equals(format)) {
+                IIOMetadataNode physical = new IIOMetadataNode("pHYs");
+                String perMeter = Long.toString(Math.round(dpi / 0.0254));
+                physical.setAttribute("pixelsPerUnitXAxis", perMeter);
+                physical.setAttribute("pixelsPerUnitYAxis", perMeter);
+                physical.setAttribute("unitSpecifier", "meter");
+                IIOMetadataNode root = new IIOMetadataNode(format);
+                root.appendChild(physical);
+                metadata.mergeTree(format, root);
+            } else if ("javax_imageio_jpeg_image_1.0".equals(format)) {
+                IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+                NodeList jfif = root.getElementsByTagName("app0JFIF");
+                if (jfif.getLength() > 0) {
+                    IIOMetadataNode app0 = (IIOMetadataNode) jfif.item(0);
+                    String density = Long.toString(Math.min(65535, Math.round(dpi)));
+                    app0.setAttribute("resUnits", "1");
+                    app0.setAttribute("Xdensity", density);
+                    app0.setAttribute("Ydensity", density);
+                    metadata.setFromTree(format, root);
+                }
+            }
+        } catch (IIOInvalidTreeException e) {
+            // the plugin has no place for it; the pixels are what matters
+        }
+        return metadata;
+    }
+}
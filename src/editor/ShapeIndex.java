@@ -0,0 +1,334 @@
+package editor;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Loose quadtree over shape paint bounds, used for hit-testing and for
+// culling shapes outside the repaint clip.
+// Every entry remembers its insertion order, which mirrors the z-order of the
+// shapes list in DrawingPanel (shapes are always appended at the end).
+class ShapeIndex {
+    private static final int NODE_CAPACITY = 16;
+    private static final double MIN_NODE_SIZE = 8;
+    private static final double INITIAL_SIZE = 1024;
+
+    private final Map<ColoredShape, Entry> entries = new IdentityHashMap<>();
+    private final List<Entry> overflow = new ArrayList<>();
+    private Node root = new Node(0, 0, INITIAL_SIZE);
+    private long nextOrder = 0;
+
+    public void insert(ColoredShape shape) {
+        insert(shape, nextOrder);
+    }
+
+    // Inserts with a given z-order key, e.g. to put a shape back where it was.
+    public void insert(ColoredShape shape, long order) {
+        remove(shape);
+        Entry entry = new Entry(shape, order);
+        nextOrder = Math.max(nextOrder, order + 1);
+        entries.put(shape, entry);
+        place(entry);
+    }
+
+    public long orderOf(ColoredShape shape) {
+        Entry entry = entries.get(shape);
+        return entry == null ? -1 : entry.order;
+    }
+
+    public void remove(ColoredShape shape) {
+        Entry entry = entries.remove(shape);
+        if (entry != null) {
+            unlink(entry);
+        }
+    }
+
+    // Swaps in a shape that stands for the same thing, keeping its z-order.
+    public void replace(ColoredShape shape, ColoredShape replacement) {
+        Entry entry = entries.remove(shape);
+        if (entry == null) {
+            insert(replacement);
+            return;
+        }
+        unlink(entry);
+        Entry swapped = new Entry(replacement, entry.order);
+        entries.put(replacement, swapped);
+        place(swapped);
+    }
+
+    public void update(ColoredShape shape) {
+        Entry entry = entries.get(shape);
+        if (entry != null) {
+            unlink(entry);
+            place(entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        overflow.clear();
+        root = new Node(0, 0, INITIAL_SIZE);
+        nextOrder = 0;
+    }
+
+    public Rectangle2D boundsOf(ColoredShape shape) {
+        Entry entry = entries.get(shape);
+        if (entry == null) {
+            return null;
+        }
+        return new Rectangle2D.Double(entry.minX, entry.minY, entry.maxX - entry.minX, entry.maxY - entry.minY);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public ColoredShape shapeAt(double px, double py) {
+        Entry best = null;
+        for (Entry e : overflow) {
+            if ((best == null || e.order > best.order) && e.shape.contains(px, py)) {
+                best = e;
+            }
+        }
+        Node node = root;
+        while (node != null && node.containsPoint(px, py)) {
+            for (int i = 0; i < node.count; i++) {
+                Entry e = node.items[i];
+                if ((best == null || e.order > best.order)
+                        && e.covers(px, py) && e.shape.contains(px, py)) {
+                    best = e;
+                }
+            }
+            node = node.children == null ? null : node.children[node.quadrantOf(px, py)];
+        }
+        return best == null ? null : best.shape;
+    }
+
+    public List<ColoredShape> query(Rectangle2D area) {
+        double minX = area.getMinX(), minY = area.getMinY();
+        double maxX = area.getMaxX(), maxY = area.getMaxY();
+        List<Entry> found = new ArrayList<>();
+        for (Entry e : overflow) {
+            if (e.intersects(minX, minY, maxX, maxY)) {
+                found.add(e);
+            }
+        }
+        collect(root, minX, minY, maxX, maxY, found);
+        found.sort(Comparator.comparingLong(e -> e.order));
+        List<ColoredShape> result = new ArrayList<>(found.size());
+        for (Entry e : found) {
+            result.add(e.shape);
+        }
+        return result;
+    }
+
+    private void collect(Node node, double minX, double minY, double maxX, double maxY, List<Entry> out) {
+        if (!node.intersects(minX, minY, maxX, maxY)) {
+            return;
+        }
+        for (int i = 0; i < node.count; i++) {
+            Entry e = node.items[i];
+            if (e.intersects(minX, minY, maxX, maxY)) {
+                out.add(e);
+            }
+        }
+        if (node.children != null) {
+            for (Node child : node.children) {
+                collect(child, minX, minY, maxX, maxY, out);
+            }
+        }
+    }
+
+    private void place(Entry entry) {
+        Rectangle2D b = entry.shape.getPaintBounds();
+        entry.setBounds(b);
+        if (!entry.isFinite()) {
+            entry.node = null;
+            entry.slot = overflow.size();
+            overflow.add(entry);
+            return;
+        }
+        while (!root.containsRect(entry)) {
+            if (!growRoot(entry)) {
+                entry.node = null;
+                entry.slot = overflow.size();
+                overflow.add(entry);
+                return;
+            }
+        }
+        Node node = root;
+        while (true) {
+            if (node.children == null && node.count >= NODE_CAPACITY && node.size / 2 >= MIN_NODE_SIZE) {
+                split(node);
+            }
+            if (node.children == null) {
+                break;
+            }
+            Node child = node.childContaining(entry);
+            if (child == null) {
+                break;
+            }
+            node = child;
+        }
+        node.add(entry);
+    }
+
+    private void split(Node node) {
+        node.subdivide();
+        int kept = 0;
+        int count = node.count;
+        Entry[] items = node.items;
+        node.count = 0;
+        for (int i = 0; i < count; i++) {
+            Entry e = items[i];
+            Node child = node.childContaining(e);
+            if (child != null) {
+                child.add(e);
+            } else {
+                items[kept] = e;
+                e.slot = kept++;
+            }
+        }
+        Arrays.fill(items, kept, count, null);
+        node.count = kept;
+    }
+
+    private boolean growRoot(Entry target) {
+        double size = root.size * 2;
+        if (Double.isInfinite(size)) {
+            return false;
+        }
+        double x = target.minX < root.x ? root.x - root.size : root.x;
+        double y = target.minY < root.y ? root.y - root.size : root.y;
+        Node grown = new Node(x, y, size);
+        grown.subdivide();
+        grown.children[grown.quadrantOf(root.x + root.size / 2, root.y + root.size / 2)] = root;
+        root = grown;
+        return true;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.node == null) {
+            Entry last = overflow.remove(overflow.size() - 1);
+            if (last != entry) {
+                overflow.set(entry.slot, last);
+                last.slot = entry.slot;
+            }
+        } else {
+            entry.node.removeAt(entry.slot);
+            entry.node = null;
+        }
+    }
+
+    private static final class Entry {
+        final ColoredShape shape;
+        final long order;
+        double minX, minY, maxX, maxY;
+        Node node;
+        int slot;
+
+        Entry(ColoredShape shape, long order) {
+            this.shape = shape;
+            this.order = order;
+        }
+
+        void setBounds(Rectangle2D b) {
+            minX = b.getMinX();
+            minY = b.getMinY();
+            maxX = b.getMaxX();
+            maxY = b.getMaxY();
+        }
+
+        boolean isFinite() {
+            return Double.isFinite(minX) && Double.isFinite(minY)
+                    && Double.isFinite(maxX) && Double.isFinite(maxY);
+        }
+
+        boolean covers(double px, double py) {
+            return px >= minX && px <= maxX && py >= minY && py <= maxY;
+        }
+
+        boolean intersects(double x0, double y0, double x1, double y1) {
+            return minX <= x1 && maxX >= x0 && minY <= y1 && maxY >= y0;
+        }
+    }
+
+    private static final class Node {
+        final double x, y, size;
+        Node[] children;
+        Entry[] items = new Entry[4];
+        int count;
+
+        Node(double x, double y, double size) {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+
+        void add(Entry e) {
+            if (count == items.length) {
+                Entry[] grown = new Entry[items.length * 2];
+                System.arraycopy(items, 0, grown, 0, count);
+                items = grown;
+            }
+            e.node = this;
+            e.slot = count;
+            items[count++] = e;
+        }
+
+        void removeAt(int slot) {
+            Entry last = items[--count];
+            items[count] = null;
+            if (slot != count) {
+                items[slot] = last;
+                last.slot = slot;
+            }
+        }
+
+        void subdivide() {
+            double half = size / 2;
+            children = new Node[] {
+                    new Node(x, y, half),
+                    new Node(x + half, y, half),
+                    new Node(x, y + half, half),
+                    new Node(x + half, y + half, half)
+            };
+        }
+
+        int quadrantOf(double px, double py) {
+            double half = size / 2;
+            int index = px >= x + half ? 1 : 0;
+            return py >= y + half ? index + 2 : index;
+        }
+
+        Node childContaining(Entry e) {
+            double half = size / 2;
+            double midX = x + half;
+            double midY = y + half;
+            boolean left = e.maxX < midX;
+            boolean right = e.minX >= midX;
+            boolean top = e.maxY < midY;
+            boolean bottom = e.minY >= midY;
+            if ((left || right) && (top || bottom)) {
+                return children[(right ? 1 : 0) + (bottom ? 2 : 0)];
+            }
+            return null;
+        }
+
+        boolean containsPoint(double px, double py) {
+            return px >= x && px < x + size && py >= y && py < y + size;
+        }
+
+        boolean containsRect(Entry e) {
+            return e.minX >= x && e.maxX < x + size && e.minY >= y && e.maxY < y + size;
+        }
+
+        boolean intersects(double x0, double y0, double x1, double y1) {
+            return x <= x1 && x + size >= x0 && y <= y1 && y + size >= y0;
+        }
+    }
+}
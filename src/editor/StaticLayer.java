@@ -0,0 +1,270 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Raster cache of every committed shape except the ones currently being
+// dragged. The canvas is split into fixed-size tiles that are rendered on
+// demand and kept in an LRU map bounded by a memory budget, so interactive
+// frames only blit tiles and draw the live shape on top. When several tiles
+// are missing at once (first paint, resize, scrolling) they are rasterized
+// concurrently, each into its own image with the same ColoredShape.paint code.
+class StaticLayer {
+    static final int TILE_SIZE = 256;
+    private static final long DEFAULT_BUDGET = Long.getLong("editor.tileCacheBudget", 256L << 20);
+    private static final ForkJoinPool RENDER_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final ShapeIndex shapeIndex;
+    private final LinkedHashMap<Long, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBudget = DEFAULT_BUDGET;
+    private long bytesUsed;
+    private long hits, misses, evictions;
+    private double scale = 1;
+    private List<ColoredShape> excluded = List.of();
+    private Set<ColoredShape> excludedSet = Set.of();
+    private boolean parallel = !"false".equals(System.getProperty("editor.parallelRendering"));
+
+    public StaticLayer(ShapeIndex shapeIndex) {
+        this.shapeIndex = shapeIndex;
+    }
+
+    public void invalidate() {
+        tiles.clear();
+        bytesUsed = 0;
+    }
+
+    public void invalidate(Rectangle2D region) {
+        if (tiles.isEmpty()) {
+            return;
+        }
+        int minCol = tileIndex(region.getMinX() - 1);
+        int maxCol = tileIndex(region.getMaxX() + 1);
+        int minRow = tileIndex(region.getMinY() - 1);
+        int maxRow = tileIndex(region.getMaxY() + 1);
+        long covered = (long) (maxCol - minCol + 1) * (maxRow - minRow + 1);
+        if (covered > tiles.size()) {
+            Iterator<Map.Entry<Long, BufferedImage>> it = tiles.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, BufferedImage> e = it.next();
+                int col = (int) (e.getKey() >> 32);
+                int row = (int) (long) e.getKey();
+                if (col >= minCol && col <= maxCol && row >= minRow && row <= maxRow) {
+                    bytesUsed -= sizeOf(e.getValue());
+                    it.remove();
+                }
+            }
+            return;
+        }
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                BufferedImage tile = tiles.remove(key(col, row));
+                if (tile != null) {
+                    bytesUsed -= sizeOf(tile);
+                }
+            }
+        }
+    }
+
+    public List<ColoredShape> getExcluded() {
+        return excluded;
+    }
+
+    public void setExcluded(Collection<ColoredShape> shapes) {
+        if (shapes.isEmpty() && excluded.isEmpty()) {
+            return;
+        }
+        for (ColoredShape shape : excluded) {
+            invalidate(shape.getPaintBounds());
+        }
+        excluded = List.copyOf(shapes);
+        Set<ColoredShape> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(excluded);
+        excludedSet = set;
+        for (ColoredShape shape : excluded) {
+            invalidate(shape.getPaintBounds());
+        }
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long bytes) {
+        memoryBudget = bytes;
+        evict();
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public TileCacheStats getStats() {
+        return new TileCacheStats(hits, misses, evictions, tiles.size(), bytesUsed, memoryBudget);
+    }
+
+    public void paint(Graphics2D g2d, int width, int height, Color background) {
+        double deviceScale = Math.max(1, g2d.getTransform().getScaleX());
+        if (deviceScale != scale) {
+            invalidate();
+            scale = deviceScale;
+        }
+        Rectangle area = g2d.getClipBounds();
+        if (area == null) {
+            area = new Rectangle(0, 0, width, height);
+        }
+        if (area.isEmpty()) {
+            return;
+        }
+        int minCol = tileIndex(area.getMinX());
+        int maxCol = tileIndex(area.getMaxX() - 1);
+        int minRow = tileIndex(area.getMinY());
+        int maxRow = tileIndex(area.getMaxY() - 1);
+        Map<Long, BufferedImage> fresh = parallel
+                ? renderMissing(minCol, maxCol, minRow, maxRow, background)
+                : Map.of();
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                BufferedImage tile = fresh.get(key(col, row));
+                if (tile != null) {
+                    misses++;
+                    store(col, row, tile);
+                } else if ((tile = tiles.get(key(col, row))) != null) {
+                    hits++;
+                } else {
+                    misses++;
+                    tile = render(col, row, background);
+                    store(col, row, tile);
+                }
+                int x = col * TILE_SIZE;
+                int y = row * TILE_SIZE;
+                g2d.drawImage(tile, x, y, x + TILE_SIZE, y + TILE_SIZE, 0, 0, tile.getWidth(), tile.getHeight(), null);
+            }
+        }
+    }
+
+    // The EDT blocks until every tile is done, so workers only ever read a
+    // model that nobody is mutating.
+    private Map<Long, BufferedImage> renderMissing(int minCol, int maxCol, int minRow, int maxRow, Color background) {
+        List<int[]> missing = new ArrayList<>();
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                if (!tiles.containsKey(key(col, row))) {
+                    missing.add(new int[] {col, row});
+                }
+            }
+        }
+        if (missing.size() < 2) {
+            return Map.of();
+        }
+        List<Callable<BufferedImage>> tasks = new ArrayList<>(missing.size());
+        for (int[] cell : missing) {
+            tasks.add(() -> render(cell[0], cell[1], background));
+        }
+        Map<Long, BufferedImage> fresh = new HashMap<>();
+        List<Future<BufferedImage>> rendered = RENDER_POOL.invokeAll(tasks);
+        for (int i = 0; i < missing.size(); i++) {
+            int[] cell = missing.get(i);
+            try {
+                fresh.put(key(cell[0], cell[1]), rendered.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Tile rendering failed", e.getCause());
+            }
+        }
+        return fresh;
+    }
+
+    private void store(int col, int row, BufferedImage tile) {
+        tiles.put(key(col, row), tile);
+        bytesUsed += sizeOf(tile);
+        evict();
+    }
+
+    private BufferedImage render(int col, int row, Color background) {
+        Metrics.TileRenderEvent event = new Metrics.TileRenderEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int painted = 0;
+        int pixels = (int) Math.ceil(TILE_SIZE * scale);
+        BufferedImage tile = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_RGB);
+        Rectangle bounds = new Rectangle(col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        Graphics2D ig = tile.createGraphics();
+        try {
+            ig.transform(AffineTransform.getScaleInstance(scale, scale));
+            ig.translate(-bounds.x, -bounds.y);
+            ig.clip(bounds);
+            ig.setColor(background);
+            ig.fill(bounds);
+            List<ColoredShape> candidates = shapeIndex.query(bounds);
+            for (ColoredShape shape : candidates) {
+                if (!excludedSet.contains(shape)) {
+                    Metrics.paint(shape, ig);
+                    painted++;
+                }
+            }
+            Metrics.culled(shapeIndex.size() - candidates.size());
+        } finally {
+            ig.dispose();
+        }
+        if (Metrics.ENABLED) {
+            Metrics.TILE.record(System.nanoTime() - start);
+        }
+        if (event.shouldCommit()) {
+            event.column = col;
+            event.row = row;
+            event.shapes = painted;
+            event.commit();
+        }
+        return tile;
+    }
+
+    private void evict() {
+        Iterator<BufferedImage> it = tiles.values().iterator();
+        while (bytesUsed > memoryBudget && tiles.size() > 1 && it.hasNext()) {
+            bytesUsed -= sizeOf(it.next());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static int tileIndex(double coordinate) {
+        return (int) Math.floor(coordinate / TILE_SIZE);
+    }
+
+    private static long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xffffffffL);
+    }
+
+    private static long sizeOf(BufferedImage tile) {
+        return (long) tile.getWidth() * tile.getHeight() * 4;
+    }
+}
+
+record TileCacheStats(long hits, long misses, long evictions, int tiles, long bytesUsed, long memoryBudget) {
+    double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
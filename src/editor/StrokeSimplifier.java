@@ -0,0 +1,75 @@
+package editor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Vertex reduction for freehand strokes stored as flat (x, y) float pairs.
+// BrushShape applies the radial-distance test while samples arrive and runs
+// Ramer-Douglas-Peucker once the stroke is finished.
+final class StrokeSimplifier {
+    static final double DEFAULT_TOLERANCE = Double.parseDouble(System.getProperty("editor.brushTolerance", "0.8"));
+
+    private StrokeSimplifier() {
+    }
+
+    static boolean isWithin(float[] coords, int index, float x, float y, double tolerance) {
+        double dx = coords[index] - x;
+        double dy = coords[index + 1] - y;
+        return dx * dx + dy * dy < tolerance * tolerance;
+    }
+
+    // Keeps only the vertices needed to stay within tolerance of the original
+    // polyline, compacting them to the front of coords. Returns the new length.
+    static int douglasPeucker(float[] coords, int length, double tolerance) {
+        int points = length / 2;
+        if (points < 3 || tolerance <= 0) {
+            return length;
+        }
+        boolean[] keep = new boolean[points];
+        keep[0] = true;
+        keep[points - 1] = true;
+        double toleranceSq = tolerance * tolerance;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {0, points - 1});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0];
+            int last = range[1];
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSq(coords, i, first, last);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0 && maxDistance > toleranceSq) {
+                keep[farthest] = true;
+                ranges.push(new int[] {first, farthest});
+                ranges.push(new int[] {farthest, last});
+            }
+        }
+        int out = 0;
+        for (int i = 0; i < points; i++) {
+            if (keep[i]) {
+                coords[out++] = coords[2 * i];
+                coords[out++] = coords[2 * i + 1];
+            }
+        }
+        return out;
+    }
+
+    private static double segmentDistanceSq(float[] coords, int point, int first, int last) {
+        double px = coords[2 * point], py = coords[2 * point + 1];
+        double ax = coords[2 * first], ay = coords[2 * first + 1];
+        double bx = coords[2 * last], by = coords[2 * last + 1];
+        double dx = bx - ax, dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        double cx = ax + t * dx - px;
+        double cy = ay + t * dy - py;
+        return cx * cx + cy * cy;
+    }
+}
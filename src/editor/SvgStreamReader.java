@@ -0,0 +1,653 @@
+package editor;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.awt.*;
+import java.awt.geom.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+// Reads SVG with a pull parser and builds ColoredShapes as elements arrive, so
+// nothing but the resulting model is kept in memory. Understands the files
+// written by SvgStreamWriter and by Batik's SVGGraphics2D: a <g> becomes a
+// ShapeGroup unless it only carries presentation attributes, which are
+// inherited by its children instead. Shapes without a stroke (backgrounds,
+// fills) have no counterpart in the editor and are skipped.
+class SvgStreamReader {
+    private static final double FLATNESS = 0.25;
+    private static final Map<String, Color> NAMED_COLORS = Map.ofEntries(
+            Map.entry("black", Color.BLACK), Map.entry("white", Color.WHITE),
+            Map.entry("red", Color.RED), Map.entry("green", new Color(0, 128, 0)),
+            Map.entry("blue", Color.BLUE), Map.entry("yellow", Color.YELLOW),
+            Map.entry("gray", Color.GRAY), Map.entry("grey", Color.GRAY),
+            Map.entry("silver", new Color(192, 192, 192)), Map.entry("maroon", new Color(128, 0, 0)),
+            Map.entry("purple", new Color(128, 0, 128)), Map.entry("fuchsia", Color.MAGENTA),
+            Map.entry("magenta", Color.MAGENTA), Map.entry("lime", Color.GREEN),
+            Map.entry("olive", new Color(128, 128, 0)), Map.entry("navy", new Color(0, 0, 128)),
+            Map.entry("teal", new Color(0, 128, 128)), Map.entry("aqua", Color.CYAN),
+            Map.entry("cyan", Color.CYAN), Map.entry("orange", new Color(255, 165, 0)),
+            Map.entry("pink", Color.PINK), Map.entry("darkgray", Color.DARK_GRAY),
+            Map.entry("lightgray", Color.LIGHT_GRAY));
+
+    private final Deque<Style> styles = new ArrayDeque<>();
+    private final Deque<List<ColoredShape>> containers = new ArrayDeque<>();
+    private final Deque<ShapeGroup> groups = new ArrayDeque<>();
+
+    public List<ColoredShape> read(InputStream in) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        List<ColoredShape> result = new ArrayList<>();
+        styles.push(new Style());
+        containers.push(result);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            int skipDepth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("SVG import cancelled");
+                    }
+                    if (skipDepth > 0 || isDefinition(reader.getLocalName())) {
+                        skipDepth++;
+                    } else {
+                        startElement(reader);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (skipDepth > 0) {
+                        skipDepth--;
+                    } else {
+                        endElement(reader.getLocalName());
+                    }
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid SVG: " + e.getMessage(), e);
+        }
+        // Batik wraps the whole drawing in one plain <g>; unwrap it.
+        while (result.size() == 1 && result.get(0) instanceof ShapeGroup group && group.getTransform().isIdentity()) {
+            List<ColoredShape> children = group.ungroup();
+            result.clear();
+            result.addAll(children);
+        }
+        return result;
+    }
+
+    private static boolean isDefinition(String name) {
+        return switch (name) {
+            case "defs", "clipPath", "mask", "symbol", "marker", "pattern", "style", "title", "desc", "metadata",
+                    "linearGradient", "radialGradient", "text" -> true;
+            default -> false;
+        };
+    }
+
+    private void startElement(XMLStreamReader reader) {
+        String name = reader.getLocalName();
+        Style style = styles.peek().inherit(reader);
+        styles.push(style);
+        AffineTransform transform = parseTransform(reader.getAttributeValue(null, "transform"));
+        switch (name) {
+            case "svg" -> containers.push(containers.peek());
+            case "g" -> {
+                if (transform == null && style.presentational) {
+                    containers.push(containers.peek());
+                } else {
+                    ShapeGroup group = new ShapeGroup();
+                    if (transform != null) {
+                        group.setTransform(transform);
+                    }
+                    groups.push(group);
+                    containers.push(new ArrayList<>());
+                }
+            }
+            default -> {
+                containers.push(containers.peek());
+                List<ColoredShape> shapes = style.stroked() ? createShapes(name, reader) : List.of();
+                for (ColoredShape shape : shapes) {
+                    shape.setColor(style.color());
+                    shape.setLineSize(style.strokeWidth);
+                    if (transform != null) {
+                        ShapeGroup wrapper = new ShapeGroup();
+                        wrapper.add(shape);
+                        wrapper.setTransform(transform);
+                        shape = wrapper;
+                    }
+                    containers.peek().add(shape);
+                }
+            }
+        }
+    }
+
+    private void endElement(String name) {
+        styles.pop();
+        List<ColoredShape> content = containers.pop();
+        if ("g".equals(name) && content != containers.peek()) {
+            ShapeGroup group = groups.pop();
+            if (!content.isEmpty()) {
+                for (ColoredShape child : content) {
+                    group.add(child);
+                }
+                containers.peek().add(group);
+            }
+        }
+    }
+
+    private List<ColoredShape> createShapes(String name, XMLStreamReader r) {
+        switch (name) {
+            case "rect" -> {
+                double w = number(r, "width"), h = number(r, "height");
+                if (w <= 0 || h <= 0) {
+                    return List.of();
+                }
+                return List.of(new RectangleShape(number(r, "x"), number(r, "y"), w, h));
+            }
+            case "ellipse" -> {
+                double rx = number(r, "rx"), ry = number(r, "ry");
+                return List.of(new EllipseShape(number(r, "cx") - rx, number(r, "cy") - ry, 2 * rx, 2 * ry, false));
+            }
+            case "circle" -> {
+                double radius = number(r, "r");
+                return List.of(new EllipseShape(number(r, "cx") - radius, number(r, "cy") - radius, 2 * radius, 2 * radius, true));
+            }
+            case "line" -> {
+                return List.of(new LineShape(number(r, "x1"), number(r, "y1"), number(r, "x2"), number(r, "y2")));
+            }
+            case "polyline", "polygon" -> {
+                Path2D.Double path = new Path2D.Double();
+                double[] points = new PathData(r.getAttributeValue(null, "points")).numbers();
+                for (int i = 0; i + 1 < points.length; i += 2) {
+                    if (i == 0) {
+                        path.moveTo(points[i], points[i + 1]);
+                    } else {
+                        path.lineTo(points[i], points[i + 1]);
+                    }
+                }
+                if ("polygon".equals(name) && points.length >= 2) {
+                    path.closePath();
+                }
+                return toBrushes(path);
+            }
+            case "path" -> {
+                String d = r.getAttributeValue(null, "d");
+                if (d == null) {
+                    return List.of();
+                }
+                ColoredShape arc = halfEllipse(d);
+                return arc != null ? List.of(arc) : toBrushes(new PathData(d).toPath());
+            }
+            default -> {
+                return List.of();
+            }
+        }
+    }
+
+    // SvgStreamWriter saves an ArcShape as "M x1 y A rx ry 0 0 s x2 y" across the
+    // horizontal diameter; map exactly that back to an ArcShape.
+    private static ColoredShape halfEllipse(String d) {
+        PathData data = new PathData(d);
+        if (data.command() != 'M') {
+            return null;
+        }
+        double x1 = data.number(), y1 = data.number();
+        if (data.command() != 'A') {
+            return null;
+        }
+        double rx = data.number(), ry = data.number(), rotation = data.number();
+        double large = data.number(), sweep = data.number();
+        double x2 = data.number(), y2 = data.number();
+        if (!data.atEnd() || rotation != 0 || large != 0 || y1 != y2 || Math.abs(Math.abs(x1 - x2) - 2 * rx) > 1e-3 || ry <= 0) {
+            return null;
+        }
+        ArcShape arc = new ArcShape(Math.min(x1, x2), y1 - ry, 2 * rx, 2 * ry, 0, 180);
+        if (x1 < x2 && sweep == 1) {
+            arc.setFlipped(true);
+        } else if (!(x1 > x2 && sweep == 0)) {
+            return null;
+        }
+        return arc;
+    }
+
+    // The editor has no general path shape, so each subpath becomes a brush
+    // stroke along the flattened outline.
+    private static List<ColoredShape> toBrushes(Path2D path) {
+        List<ColoredShape> brushes = new ArrayList<>();
+        BrushShape current = null;
+        double startX = 0, startY = 0;
+        double[] c = new double[6];
+        for (PathIterator it = path.getPathIterator(null, FLATNESS); !it.isDone(); it.next()) {
+            switch (it.currentSegment(c)) {
+                case PathIterator.SEG_MOVETO -> {
+                    current = new BrushShape(c[0], c[1]);
+                    brushes.add(current);
+                    startX = c[0];
+                    startY = c[1];
+                }
+                case PathIterator.SEG_LINETO -> {
+                    if (current != null) {
+                        current.addPoint(c[0], c[1]);
+                    }
+                }
+                case PathIterator.SEG_CLOSE -> {
+                    if (current != null) {
+                        current.addPoint(startX, startY);
+                    }
+                }
+            }
+        }
+        for (ColoredShape brush : brushes) {
+            ((BrushShape) brush).trimToSize();
+        }
+        return brushes;
+    }
+
+    private static double number(XMLStreamReader r, String attribute) {
+        String value = r.getAttributeValue(null, attribute);
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        return new PathData(value).number();
+    }
+
+    static AffineTransform parseTransform(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        AffineTransform result = new AffineTransform();
+        int pos = 0;
+        while (pos < value.length()) {
+            int open = value.indexOf('(', pos);
+            int close = value.indexOf(')', open + 1);
+            if (open < 0 || close < 0) {
+                break;
+            }
+            String kind = value.substring(pos, open).replace(",", " ").trim();
+            double[] a = new PathData(value.substring(open + 1, close)).numbers();
+            AffineTransform step = switch (kind) {
+                case "matrix" -> a.length == 6 ? new AffineTransform(a) : new AffineTransform();
+                case "translate" -> AffineTransform.getTranslateInstance(arg(a, 0, 0), arg(a, 1, 0));
+                case "scale" -> AffineTransform.getScaleInstance(arg(a, 0, 1), arg(a, 1, arg(a, 0, 1)));
+                case "rotate" -> AffineTransform.getRotateInstance(Math.toRadians(arg(a, 0, 0)), arg(a, 1, 0), arg(a, 2, 0));
+                case "skewX" -> AffineTransform.getShearInstance(Math.tan(Math.toRadians(arg(a, 0, 0))), 0);
+                case "skewY" -> AffineTransform.getShearInstance(0, Math.tan(Math.toRadians(arg(a, 0, 0))));
+                default -> new AffineTransform();
+            };
+            result.concatenate(step);
+            pos = close + 1;
+        }
+        return result.isIdentity() ? null : result;
+    }
+
+    private static double arg(double[] a, int i, double fallback) {
+        return i < a.length ? a[i] : fallback;
+    }
+
+    static Color parseColor(String value, Color fallback) {
+        String v = value.trim().toLowerCase();
+        try {
+            if (v.startsWith("#")) {
+                if (v.length() == 4) {
+                    int r = Integer.parseInt(v.substring(1, 2), 16);
+                    int g = Integer.parseInt(v.substring(2, 3), 16);
+                    int b = Integer.parseInt(v.substring(3, 4), 16);
+                    return new Color(r * 17, g * 17, b * 17);
+                }
+                return new Color(Integer.parseInt(v.substring(1, 7), 16));
+            }
+            if (v.startsWith("rgb(") && v.endsWith(")")) {
+                String[] parts = v.substring(4, v.length() - 1).split(",");
+                int[] rgb = new int[3];
+                for (int i = 0; i < 3; i++) {
+                    String part = parts[i].trim();
+                    rgb[i] = part.endsWith("%")
+                            ? (int) Math.round(Double.parseDouble(part.substring(0, part.length() - 1)) * 2.55)
+                            : Integer.parseInt(part);
+                    rgb[i] = Math.max(0, Math.min(255, rgb[i]));
+                }
+                return new Color(rgb[0], rgb[1], rgb[2]);
+            }
+        } catch (RuntimeException e) {
+            return fallback;
+        }
+        return NAMED_COLORS.getOrDefault(v, fallback);
+    }
+
+    // Inherited presentation state. Only stroke properties matter since the
+    // editor draws outlines.
+    private static final class Style {
+        Color stroke = Color.BLACK;
+        // SVG's initial stroke is none
+        boolean strokeNone = true;
+        double opacity = 1;
+        float strokeWidth = 1;
+        // true when the element set any presentation attribute itself
+        boolean presentational;
+
+        Style inherit(XMLStreamReader r) {
+            Style s = new Style();
+            s.stroke = stroke;
+            s.strokeNone = strokeNone;
+            s.opacity = opacity;
+            s.strokeWidth = strokeWidth;
+            for (int i = 0; i < r.getAttributeCount(); i++) {
+                String name = r.getAttributeLocalName(i);
+                String value = r.getAttributeValue(i);
+                if ("style".equals(name)) {
+                    for (String declaration : value.split(";")) {
+                        int colon = declaration.indexOf(':');
+                        if (colon > 0) {
+                            s.apply(declaration.substring(0, colon).trim(), declaration.substring(colon + 1).trim());
+                        }
+                    }
+                    s.presentational = true;
+                } else {
+                    s.apply(name, value.trim());
+                }
+            }
+            return s;
+        }
+
+        private void apply(String property, String value) {
+            switch (property) {
+                case "stroke" -> {
+                    strokeNone = "none".equals(value);
+                    if (!strokeNone && !"currentColor".equals(value)) {
+                        stroke = parseColor(value, stroke);
+                    }
+                }
+                case "stroke-width" -> {
+                    double width = new PathData(value).number();
+                    strokeWidth = width > 0 ? (float) width : strokeWidth;
+                }
+                case "stroke-opacity" -> opacity = Math.max(0, Math.min(1, new PathData(value).number()));
+                case "fill", "fill-opacity", "stroke-linecap", "stroke-linejoin", "stroke-miterlimit",
+                        "font-family", "font-size", "font-weight", "font-style", "clip-path", "opacity" -> {
+                }
+                default -> {
+                    return;
+                }
+            }
+            presentational = true;
+        }
+
+        boolean stroked() {
+            return !strokeNone && opacity > 0;
+        }
+
+        Color color() {
+            if (opacity >= 1) {
+                return stroke;
+            }
+            return new Color(stroke.getRed(), stroke.getGreen(), stroke.getBlue(), (int) Math.round(opacity * 255));
+        }
+    }
+
+    // Tokenizer for path data, point lists, transform arguments and lengths.
+    static final class PathData {
+        private final String s;
+        private int pos;
+
+        PathData(String s) {
+            this.s = s == null ? "" : s;
+        }
+
+        boolean atEnd() {
+            skipSeparators();
+            return pos >= s.length();
+        }
+
+        char command() {
+            skipSeparators();
+            return pos < s.length() && Character.isLetter(s.charAt(pos)) && s.charAt(pos) != 'e' && s.charAt(pos) != 'E'
+                    ? s.charAt(pos++) : 0;
+        }
+
+        boolean hasNumber() {
+            skipSeparators();
+            if (pos >= s.length()) {
+                return false;
+            }
+            char c = s.charAt(pos);
+            return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+        }
+
+        double number() {
+            skipSeparators();
+            int start = pos;
+            if (pos < s.length() && (s.charAt(pos) == '-' || s.charAt(pos) == '+')) {
+                pos++;
+            }
+            boolean dot = false;
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (c >= '0' && c <= '9') {
+                    pos++;
+                } else if (c == '.' && !dot) {
+                    dot = true;
+                    pos++;
+                } else if ((c == 'e' || c == 'E') && pos + 1 < s.length()) {
+                    pos++;
+                    if (s.charAt(pos) == '-' || s.charAt(pos) == '+') {
+                        pos++;
+                    }
+                    dot = true;
+                } else {
+                    break;
+                }
+            }
+            if (start == pos) {
+                pos = Math.min(pos + 1, s.length());
+                return 0;
+            }
+            try {
+                return Double.parseDouble(s.substring(start, pos));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        // Single-digit flags in arcs may be written without separators.
+        double flag() {
+            skipSeparators();
+            if (pos < s.length() && (s.charAt(pos) == '0' || s.charAt(pos) == '1')) {
+                return s.charAt(pos++) - '0';
+            }
+            return number();
+        }
+
+        double[] numbers() {
+            List<Double> values = new ArrayList<>();
+            while (hasNumber()) {
+                values.add(number());
+            }
+            double[] result = new double[values.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = values.get(i);
+            }
+            return result;
+        }
+
+        private void skipSeparators() {
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (c == ' ' || c == ',' || c == '\n' || c == '\r' || c == '\t') {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            if (pos < s.length() && s.startsWith("px", pos)) {
+                pos += 2;
+            }
+        }
+
+        Path2D.Double toPath() {
+            Path2D.Double path = new Path2D.Double();
+            double x = 0, y = 0, startX = 0, startY = 0;
+            double ctrlX = 0, ctrlY = 0;
+            char previous = 0;
+            char command = 0;
+            while (!atEnd()) {
+                char next = command();
+                if (next != 0) {
+                    command = next;
+                } else if (command == 0 || !hasNumber()) {
+                    break;
+                } else if (command == 'M') {
+                    command = 'L';
+                } else if (command == 'm') {
+                    command = 'l';
+                }
+                boolean relative = Character.isLowerCase(command);
+                double ox = relative ? x : 0, oy = relative ? y : 0;
+                switch (Character.toUpperCase(command)) {
+                    case 'M' -> {
+                        x = ox + number();
+                        y = oy + number();
+                        path.moveTo(x, y);
+                        startX = x;
+                        startY = y;
+                    }
+                    case 'L' -> {
+                        x = ox + number();
+                        y = oy + number();
+                        lineTo(path, x, y);
+                    }
+                    case 'H' -> {
+                        x = ox + number();
+                        lineTo(path, x, y);
+                    }
+                    case 'V' -> {
+                        y = oy + number();
+                        lineTo(path, x, y);
+                    }
+                    case 'C' -> {
+                        double x1 = ox + number(), y1 = oy + number();
+                        ctrlX = ox + number();
+                        ctrlY = oy + number();
+                        x = ox + number();
+                        y = oy + number();
+                        ensureStarted(path, ox, oy);
+                        path.curveTo(x1, y1, ctrlX, ctrlY, x, y);
+                    }
+                    case 'S' -> {
+                        boolean smooth = "CcSs".indexOf(previous) >= 0;
+                        double x1 = smooth ? 2 * x - ctrlX : x, y1 = smooth ? 2 * y - ctrlY : y;
+                        ctrlX = ox + number();
+                        ctrlY = oy + number();
+                        x = ox + number();
+                        y = oy + number();
+                        ensureStarted(path, ox, oy);
+                        path.curveTo(x1, y1, ctrlX, ctrlY, x, y);
+                    }
+                    case 'Q' -> {
+                        ctrlX = ox + number();
+                        ctrlY = oy + number();
+                        x = ox + number();
+                        y = oy + number();
+                        ensureStarted(path, ox, oy);
+                        path.quadTo(ctrlX, ctrlY, x, y);
+                    }
+                    case 'T' -> {
+                        boolean smooth = "QqTt".indexOf(previous) >= 0;
+                        ctrlX = smooth ? 2 * x - ctrlX : x;
+                        ctrlY = smooth ? 2 * y - ctrlY : y;
+                        x = ox + number();
+                        y = oy + number();
+                        ensureStarted(path, ox, oy);
+                        path.quadTo(ctrlX, ctrlY, x, y);
+                    }
+                    case 'A' -> {
+                        double rx = number(), ry = number(), angle = number();
+                        boolean large = flag() != 0, sweep = flag() != 0;
+                        double x0 = x, y0 = y;
+                        x = ox + number();
+                        y = oy + number();
+                        ensureStarted(path, x0, y0);
+                        arcTo(path, x0, y0, rx, ry, angle, large, sweep, x, y);
+                    }
+                    case 'Z' -> {
+                        path.closePath();
+                        x = startX;
+                        y = startY;
+                    }
+                    default -> {
+                        return path;
+                    }
+                }
+                previous = command;
+            }
+            return path;
+        }
+
+        private static void ensureStarted(Path2D path, double x, double y) {
+            if (path.getCurrentPoint() == null) {
+                path.moveTo(x, y);
+            }
+        }
+
+        private static void lineTo(Path2D path, double x, double y) {
+            if (path.getCurrentPoint() == null) {
+                path.moveTo(x, y);
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+
+        // Endpoint to center parameterization from the SVG implementation notes (F.6.5).
+        private static void arcTo(Path2D path, double x0, double y0, double rx, double ry, double angle,
+                                  boolean large, boolean sweep, double x, double y) {
+            if (x0 == x && y0 == y) {
+                return;
+            }
+            rx = Math.abs(rx);
+            ry = Math.abs(ry);
+            if (rx == 0 || ry == 0) {
+                path.lineTo(x, y);
+                return;
+            }
+            double phi = Math.toRadians(angle % 360);
+            double cos = Math.cos(phi), sin = Math.sin(phi);
+            double dx2 = (x0 - x) / 2, dy2 = (y0 - y) / 2;
+            double x1 = cos * dx2 + sin * dy2;
+            double y1 = -sin * dx2 + cos * dy2;
+            double lambda = (x1 * x1) / (rx * rx) + (y1 * y1) / (ry * ry);
+            if (lambda > 1) {
+                rx *= Math.sqrt(lambda);
+                ry *= Math.sqrt(lambda);
+            }
+            double num = rx * rx * ry * ry - rx * rx * y1 * y1 - ry * ry * x1 * x1;
+            double den = rx * rx * y1 * y1 + ry * ry * x1 * x1;
+            double coef = (large == sweep ? -1 : 1) * Math.sqrt(Math.max(0, num / den));
+            double cx1 = coef * rx * y1 / ry;
+            double cy1 = -coef * ry * x1 / rx;
+            double cx = cos * cx1 - sin * cy1 + (x0 + x) / 2;
+            double cy = sin * cx1 + cos * cy1 + (y0 + y) / 2;
+            double ux = (x1 - cx1) / rx, uy = (y1 - cy1) / ry;
+            double vx = (-x1 - cx1) / rx, vy = (-y1 - cy1) / ry;
+            double start = Math.toDegrees(Math.atan2(uy, ux));
+            double extent = Math.toDegrees(Math.atan2(ux * vy - uy * vx, ux * vx + uy * vy));
+            if (!sweep && extent > 0) {
+                extent -= 360;
+            } else if (sweep && extent < 0) {
+                extent += 360;
+            }
+            // Arc2D measures angles counter-clockwise on screen, SVG clockwise.
+            Arc2D.Double arc = new Arc2D.Double(cx - rx, cy - ry, 2 * rx, 2 * ry, -start, -extent, Arc2D.OPEN);
+            Shape shape = arc;
+            if (phi != 0) {
+                shape = AffineTransform.getRotateInstance(phi, cx, cy).createTransformedShape(arc);
+            }
+            path.append(shape, true);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.io.IOException;
+import java.io.Writer;
+
+// Writes the shape model straight to SVG markup, one element per shape, with
+// no intermediate DOM. Only the current shape is ever held, so memory stays
+// flat no matter how large the drawing is.
+class SvgStreamWriter {
+    private final Writer out;
+    private final char[] digits = new char[32];
+    private final double[] coords = new double[6];
+
+    public SvgStreamWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void writeDocument(Iterable<ColoredShape> shapes, int width, int height, Color background) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        number(width);
+        out.write("\" height=\"");
+        number(height);
+        out.write("\" viewBox=\"0 0 ");
+        number(width);
+        out.write(' ');
+        number(height);
+        out.write("\">\n<rect width=\"");
+        number(width);
+        out.write("\" height=\"");
+        number(height);
+        out.write("\" fill=\"");
+        color(background);
+        out.write("\"/>\n");
+        // Java2D's default BasicStroke uses square caps and a miter limit of 10.
+        out.write("<g fill=\"none\" stroke-linecap=\"square\" stroke-miterlimit=\"10\">\n");
+        for (ColoredShape shape : shapes) {
+            writeShape(shape);
+        }
+        out.write("</g>\n</svg>\n");
+        out.flush();
+    }
+
+    public void writeShape(ColoredShape shape) throws IOException {
+        if (shape instanceof LazyShape lazy) {
+            writeShape(lazy.resolve());
+        } else if (shape instanceof ShapeGroup group) {
+            writeGroup(group);
+        } else if (shape instanceof RectangleShape rectangle) {
+            Rectangle2D r = rectangle.getShape();
+            if (r.getWidth() <= 0 || r.getHeight() <= 0) {
+                writePath(shape, r.getPathIterator(null));
+                return;
+            }
+            out.write("<rect x=\"");
+            number(r.getX());
+            out.write("\" y=\"");
+            number(r.getY());
+            out.write("\" width=\"");
+            number(r.getWidth());
+            out.write("\" height=\"");
+            number(r.getHeight());
+            endElement(shape);
+        } else if (shape instanceof EllipseShape ellipse) {
+            Ellipse2D e = ellipse.getShape();
+            if (ellipse.isCircle() && e.getWidth() == e.getHeight()) {
+                out.write("<circle cx=\"");
+                number(e.getCenterX());
+                out.write("\" cy=\"");
+                number(e.getCenterY());
+                out.write("\" r=\"");
+                number(e.getWidth() / 2);
+            } else {
+                out.write("<ellipse cx=\"");
+                number(e.getCenterX());
+                out.write("\" cy=\"");
+                number(e.getCenterY());
+                out.write("\" rx=\"");
+                number(e.getWidth() / 2);
+                out.write("\" ry=\"");
+                number(e.getHeight() / 2);
+            }
+            endElement(shape);
+        } else if (shape instanceof LineShape lineShape) {
+            Line2D l = lineShape.getShape();
+            out.write("<line x1=\"");
+            number(l.getX1());
+            out.write("\" y1=\"");
+            number(l.getY1());
+            out.write("\" x2=\"");
+            number(l.getX2());
+            out.write("\" y2=\"");
+            number(l.getY2());
+            endElement(shape);
+        } else if (shape instanceof ArcShape arcShape) {
+            writeArc(arcShape);
+        } else if (shape instanceof BrushShape brush) {
+            writeBrush(brush);
+        } else if (shape instanceof PolygonShape polygon) {
+            writePath(shape, polygon.getShape().getPathIterator(null));
+        }
+    }
+
+    private void writeGroup(ShapeGroup group) throws IOException {
+        AffineTransform t = group.getTransform();
+        if (t.isIdentity()) {
+            out.write("<g>\n");
+        } else {
+            t.getMatrix(coords);
+            out.write("<g transform=\"matrix(");
+            for (int i = 0; i < 6; i++) {
+                if (i > 0) {
+                    out.write(' ');
+                }
+                // matrix terms multiply coordinates, so they need more precision
+                number(coords[i], 6);
+            }
+            out.write(")\">\n");
+        }
+        for (ColoredShape child : group.getChildren()) {
+            writeShape(child);
+        }
+        out.write("</g>\n");
+    }
+
+    private void writeArc(ArcShape arcShape) throws IOException {
+        Arc2D arc = arcShape.getShape();
+        double extent = arc.getAngleExtent();
+        if (Math.abs(extent) >= 360 || arc.getWidth() <= 0 || arc.getHeight() <= 0) {
+            writePath(arcShape, arc.getPathIterator(null));
+            return;
+        }
+        Point2D start = arc.getStartPoint();
+        Point2D end = arc.getEndPoint();
+        out.write("<path d=\"M");
+        number(start.getX());
+        out.write(' ');
+        number(start.getY());
+        out.write("A");
+        number(arc.getWidth() / 2);
+        out.write(' ');
+        number(arc.getHeight() / 2);
+        // Arc2D angles run counter-clockwise on screen, SVG's sweep flag 1 is clockwise.
+        out.write(Math.abs(extent) > 180 ? " 0 1 " : " 0 0 ");
+        out.write(extent > 0 ? "0 " : "1 ");
+        number(end.getX());
+        out.write(' ');
+        number(end.getY());
+        endElement(arcShape);
+    }
+
+    private void writeBrush(BrushShape brush) throws IOException {
+        out.write("<path d=\"M");
+        int count = brush.getPointCount();
+        for (int i = 0; i < count; i++) {
+            if (i == 1) {
+                out.write('L');
+            } else if (i > 1) {
+                out.write(' ');
+            }
+            number(brush.getPointX(i));
+            out.write(' ');
+            number(brush.getPointY(i));
+        }
+        endElement(brush);
+    }
+
+    private void writePath(ColoredShape shape, PathIterator it) throws IOException {
+        out.write("<path d=\"");
+        for (; !it.isDone(); it.next()) {
+            int type = it.currentSegment(coords);
+            switch (type) {
+                case PathIterator.SEG_MOVETO -> point('M', 0);
+                case PathIterator.SEG_LINETO -> point('L', 0);
+                case PathIterator.SEG_QUADTO -> {
+                    point('Q', 0);
+                    point(' ', 2);
+                }
+                case PathIterator.SEG_CUBICTO -> {
+                    point('C', 0);
+                    point(' ', 2);
+                    point(' ', 4);
+                }
+                case PathIterator.SEG_CLOSE -> out.write('Z');
+            }
+        }
+        endElement(shape);
+    }
+
+    private void point(char command, int offset) throws IOException {
+        out.write(command);
+        number(coords[offset]);
+        out.write(' ');
+        number(coords[offset + 1]);
+    }
+
+    private void endElement(ColoredShape shape) throws IOException {
+        out.write("\" stroke=\"");
+        color(shape.getColor());
+        if (shape.getColor().getAlpha() != 255) {
+            out.write("\" stroke-opacity=\"");
+            number(shape.getColor().getAlpha() / 255.0);
+        }
+        if (shape.getLineSize() != 1f) {
+            out.write("\" stroke-width=\"");
+            number(shape.getLineSize());
+        }
+        out.write("\"/>\n");
+    }
+
+    private void color(Color c) throws IOException {
+        int rgb = c.getRGB() & 0xffffff;
+        out.write('#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            out.write(Character.forDigit((rgb >> shift) & 0xf, 16));
+        }
+    }
+
+    private void number(double v) throws IOException {
+        number(v, 3);
+    }
+
+    // Formats with at most the given number of decimals and no exponent,
+    // without allocating.
+    private void number(double v, int decimals) throws IOException {
+        long unit = 1;
+        for (int i = 0; i < decimals; i++) {
+            unit *= 10;
+        }
+        long scaled = Math.round(v * unit);
+        if (!Double.isFinite(v) || Math.abs(scaled) >= Long.MAX_VALUE / 10) {
+            out.write(Double.isFinite(v) ? Double.toString(v) : "0");
+            return;
+        }
+        int pos = digits.length;
+        boolean negative = scaled < 0;
+        long abs = Math.abs(scaled);
+        long fraction = abs % unit;
+        long whole = abs / unit;
+        if (fraction != 0) {
+            int places = decimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                places--;
+            }
+            for (int i = 0; i < places; i++) {
+                digits[--pos] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            digits[--pos] = '.';
+        }
+        do {
+            digits[--pos] = (char) ('0' + whole % 10);
+            whole /= 10;
+        } while (whole != 0);
+        if (negative) {
+            digits[--pos] = '-';
+        }
+        out.write(digits, pos, digits.length - pos);
+    }
+}
@@ -0,0 +1,77 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRendererTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsNativeAndSvgDocuments() throws Exception {
+        List<ColoredShape> shapes = List.of(new RectangleShape(0, 0, 10, 10), new LineShape(5, 5, 40, 30));
+        File vgd = directory.resolve("a.vgd").toFile();
+        NativeDocument.save(shapes, vgd.toPath());
+        File svg = directory.resolve("b.SVG").toFile();
+        Files.writeString(svg.toPath(), "<svg xmlns=\"http://www.w3.org/2000/svg\"><rect stroke=\"black\" x=\"1\" y=\"2\" width=\"3\" height=\"4\"/></svg>");
+
+        assertEquals(2, BatchRenderer.load(vgd).size());
+        List<ColoredShape> fromSvg = BatchRenderer.load(svg);
+        assertEquals(1, fromSvg.size());
+        assertInstanceOf(RectangleShape.class, fromSvg.get(0));
+    }
+
+    @Test
+    void sizesTheCanvasToTheFarEdgeOfTheDrawing() {
+        List<ColoredShape> shapes = List.of(new RectangleShape(10, 20, 100, 50), new LineShape(0, 0, 30.5, 200.25));
+        DocumentSnapshot fitted = BatchRenderer.snapshot(shapes, null);
+        Rectangle2D far = shapes.get(0).getPaintBounds().createUnion(shapes.get(1).getPaintBounds());
+        assertEquals((int) Math.ceil(far.getMaxX()), fitted.width());
+        assertEquals((int) Math.ceil(far.getMaxY()), fitted.height());
+        assertEquals(2, fitted.shapes().size());
+
+        DocumentSnapshot fixed = BatchRenderer.snapshot(shapes, new Dimension(640, 480));
+        assertEquals(640, fixed.width());
+        assertEquals(480, fixed.height());
+    }
+
+    @Test
+    void rejectsInputsThatWouldRenderToTheSameFile() throws IOException {
+        NativeDocument.save(List.of(new RectangleShape(0, 0, 10, 10)), directory.resolve("a.vgd"));
+        Files.writeString(directory.resolve("a.svg"), "<svg xmlns=\"http://www.w3.org/2000/svg\"/>");
+        Files.writeString(directory.resolve("b.svg"), "<svg xmlns=\"http://www.w3.org/2000/svg\"/>");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> BatchRenderer.parse(new String[]{"-o", "out", directory.toString()}));
+        assertTrue(e.getMessage().contains("a.vgd") && e.getMessage().contains("a.svg"), e.getMessage());
+    }
+
+    @Test
+    void rejectsTheSameNameFromTwoDirectories() throws IOException {
+        Path first = Files.createDirectory(directory.resolve("first"));
+        Path second = Files.createDirectory(directory.resolve("second"));
+        NativeDocument.save(List.of(new RectangleShape(0, 0, 10, 10)), first.resolve("a.vgd"));
+        NativeDocument.save(List.of(new RectangleShape(0, 0, 10, 10)), second.resolve("A.vgd"));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> BatchRenderer.parse(new String[]{first.toString(), second.toString()}));
+    }
+
+    @Test
+    void acceptsDistinctNames() throws IOException {
+        NativeDocument.save(List.of(new RectangleShape(0, 0, 10, 10)), directory.resolve("a.vgd"));
+        Files.writeString(directory.resolve("b.svg"), "<svg xmlns=\"http://www.w3.org/2000/svg\"/>");
+
+        assertEquals(2, BatchRenderer.parse(new String[]{directory.toString()}).inputs().size());
+    }
+}
@@ -0,0 +1,130 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BrushShapeTest {
+    private static final double TOLERANCE = 0.8;
+
+    @Test
+    void storesEveryPoint() {
+        BrushShape brush = new BrushShape(1000.5, 2000.25);
+        Path2D.Double path = new Path2D.Double();
+        path.moveTo(1000.5, 2000.25);
+        for (int i = 1; i < 1_000; i++) {
+            double x = 1000.5 + i * 0.75, y = 2000.25 + Math.sin(i / 10.0) * 50;
+            brush.addPoint(x, y);
+            path.lineTo(x, y);
+        }
+        brush.trimToSize();
+
+        assertEquals(1_000, brush.getPointCount());
+        assertEquals(1000.5 + 999 * 0.75, brush.getPointX(999), 1e-3);
+        assertEquals(path.getBounds2D().getMinY(), brush.getBoundingBox().getMinY(), 1e-3);
+        assertEquals(path.getBounds2D().getMaxX(), brush.getBoundingBox().getMaxX(), 1e-3);
+
+        // the painted outline is the same polyline
+        PathIterator expected = path.getPathIterator(null);
+        PathIterator actual = brush.getShape().getPathIterator(null);
+        double[] e = new double[6], a = new double[6];
+        while (!expected.isDone()) {
+            assertFalse(actual.isDone());
+            assertEquals(expected.currentSegment(e), actual.currentSegment(a));
+            assertEquals(e[0], a[0], 1e-3);
+            assertEquals(e[1], a[1], 1e-3);
+            expected.next();
+            actual.next();
+        }
+        assertTrue(actual.isDone());
+    }
+
+    @Test
+    void moveShiftsEveryPoint() {
+        BrushShape brush = new BrushShape(10, 10);
+        // double literals: ColoredShape.addPoint(int, int) is the polygon overload
+        brush.addPoint(20.0, 30.0);
+        brush.addPoint(40.0, 15.0);
+        brush.move(110, 210);
+
+        assertEquals(new Rectangle2D.Double(110, 210, 30, 20), brush.getBoundingBox());
+        assertEquals(120, brush.getPointX(1), 1e-6);
+        assertEquals(230, brush.getPointY(1), 1e-6);
+    }
+
+    @Test
+    void simplifyKeepsTheFirstAndLastSample() {
+        BrushShape brush = new BrushShape(0, 0);
+        brush.setTolerance(TOLERANCE);
+        for (int i = 1; i <= 100; i++) {
+            brush.addPoint(i * 0.1, 0);
+        }
+        brush.simplify();
+        assertEquals(2, brush.getPointCount());
+        assertEquals(0, brush.getPointX(0), 1e-6);
+        assertEquals(10, brush.getPointX(1), 1e-4);
+    }
+
+    // Every sample, including the ones the radial filter dropped while
+    // drawing, stays within the tolerance of the simplified stroke.
+    @Test
+    void simplifiedStrokeStaysWithinToleranceOfEverySample() {
+        SplittableRandom random = new SplittableRandom(5);
+        int samples = 5_000;
+        double[] xs = new double[samples];
+        double[] ys = new double[samples];
+        double x = 100, y = 100, heading = 0;
+        for (int i = 0; i < samples; i++) {
+            // a wandering hand with half a pixel of jitter, sampled densely
+            heading += random.nextDouble(-0.15, 0.15);
+            x += Math.cos(heading) * random.nextDouble(0.1, 1.5);
+            y += Math.sin(heading) * random.nextDouble(0.1, 1.5);
+            xs[i] = x + random.nextDouble(-0.5, 0.5);
+            ys[i] = y + random.nextDouble(-0.5, 0.5);
+        }
+
+        BrushShape brush = new BrushShape(xs[0], ys[0]);
+        brush.setTolerance(TOLERANCE);
+        for (int i = 1; i < samples; i++) {
+            brush.addPoint(xs[i], ys[i]);
+        }
+        brush.simplify();
+
+        assertTrue(brush.getPointCount() < samples / 2, brush.getPointCount() + " of " + samples + " vertices kept");
+        double worst = 0;
+        for (int i = 0; i < samples; i++) {
+            worst = Math.max(worst, distanceToStroke(brush, xs[i], ys[i]));
+        }
+        // float storage rounds the vertices by a few micro-pixels
+        assertTrue(worst <= TOLERANCE + 1e-3, "a sample is " + worst + " px from the stroke");
+    }
+
+    @Test
+    void zeroToleranceKeepsEverySample() {
+        BrushShape brush = new BrushShape(0, 0);
+        brush.setTolerance(0);
+        for (int i = 1; i < 100; i++) {
+            brush.addPoint(i * 0.1, 0);
+        }
+        brush.simplify();
+        assertEquals(100, brush.getPointCount());
+    }
+
+    private static double distanceToStroke(BrushShape brush, double px, double py) {
+        if (brush.getPointCount() == 1) {
+            return Math.hypot(px - brush.getPointX(0), py - brush.getPointY(0));
+        }
+        double best = Double.MAX_VALUE;
+        for (int i = 1; i < brush.getPointCount(); i++) {
+            best = Math.min(best, Line2D.ptSegDist(brush.getPointX(i - 1), brush.getPointY(i - 1),
+                    brush.getPointX(i), brush.getPointY(i), px, py));
+        }
+        return best;
+    }
+}
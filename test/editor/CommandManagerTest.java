@@ -0,0 +1,168 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandManagerTest {
+    private final List<String> log = new ArrayList<>();
+    private final CommandManager manager = new CommandManager();
+
+    @Test
+    void dropsTheOldestEntriesPastTheLimit() {
+        manager.setLimit(3);
+        for (int i = 1; i <= 5; i++) {
+            manager.executeCommand(new Step("s" + i, 100));
+        }
+        assertEquals(new HistoryStats(3, 0, 300, manager.getBudget(), 2), manager.getStats());
+
+        for (int i = 0; i < 4; i++) {
+            manager.undo();
+        }
+        assertEquals(List.of("do s1", "do s2", "do s3", "do s4", "do s5", "undo s5", "undo s4", "undo s3"), log);
+    }
+
+    @Test
+    void dropsTheOldestEntriesPastTheBudget() {
+        manager.setBudget(1_000);
+        manager.executeCommand(new Step("small", 100));
+        manager.executeCommand(new Step("large", 700));
+        manager.executeCommand(new Step("medium", 300));
+        assertEquals(new HistoryStats(2, 0, 1_000, 1_000, 1), manager.getStats());
+
+        // a single entry over budget does not survive either
+        manager.executeCommand(new Step("huge", 5_000));
+        assertEquals(new HistoryStats(0, 0, 0, 1_000, 4), manager.getStats());
+    }
+
+    @Test
+    void countsRedoEntriesUntilANewCommandClearsThem() {
+        manager.executeCommand(new Step("a", 100));
+        manager.executeCommand(new Step("b", 200));
+        manager.undo();
+        assertEquals(new HistoryStats(1, 1, 300, manager.getBudget(), 0), manager.getStats());
+
+        manager.executeCommand(new Step("c", 50));
+        assertEquals(new HistoryStats(2, 0, 150, manager.getBudget(), 0), manager.getStats());
+        manager.redo();
+        assertEquals(List.of("do a", "do b", "undo b", "do c"), log);
+    }
+
+    @Test
+    void loweringTheLimitTrimsRightAway() {
+        for (int i = 0; i < 10; i++) {
+            manager.executeCommand(new Step("s" + i, 10));
+        }
+        manager.undo();
+        manager.setLimit(4);
+        assertEquals(new HistoryStats(3, 1, 40, manager.getBudget(), 6), manager.getStats());
+    }
+
+    @Test
+    void mergesConsecutiveMovesOfTheSameShape() {
+        DrawingPanel panel = new DrawingPanel();
+        RectangleShape shape = new RectangleShape(0, 0, 10, 10);
+        panel.addShape(shape);
+        manager.executeCommand(move(panel, shape, 0, 10));
+        manager.executeCommand(move(panel, shape, 10, 20));
+        manager.executeCommand(move(panel, shape, 20, 30));
+        assertEquals(1, manager.getStats().undoEntries());
+
+        manager.undo();
+        assertEquals(0, shape.getX());
+        manager.redo();
+        assertEquals(30, shape.getX());
+    }
+
+    @Test
+    void doesNotMergeAcrossShapesOrUndo() {
+        DrawingPanel panel = new DrawingPanel();
+        RectangleShape a = new RectangleShape(0, 0, 10, 10);
+        RectangleShape b = new RectangleShape(50, 0, 10, 10);
+        panel.addShape(a);
+        panel.addShape(b);
+        manager.executeCommand(move(panel, a, 0, 10));
+        manager.executeCommand(move(panel, b, 50, 60));
+        assertEquals(2, manager.getStats().undoEntries());
+
+        manager.undo();
+        manager.redo();
+        manager.executeCommand(move(panel, b, 60, 70));
+        assertEquals(3, manager.getStats().undoEntries());
+        manager.undo();
+        assertEquals(60, b.getX());
+    }
+
+    @Test
+    void aZeroWindowTurnsMergingOff() {
+        DrawingPanel panel = new DrawingPanel();
+        RectangleShape shape = new RectangleShape(0, 0, 10, 10);
+        panel.addShape(shape);
+        manager.setMergeWindow(0);
+        manager.executeCommand(move(panel, shape, 0, 10));
+        manager.executeCommand(move(panel, shape, 10, 20));
+        assertEquals(2, manager.getStats().undoEntries());
+    }
+
+    @Test
+    void recountsAnEntryThatGrewByMerging() {
+        manager.setBudget(1_000);
+        manager.executeCommand(new Step("other", 100));
+        manager.executeCommand(new Step("drag", 300));
+        manager.executeCommand(new Step("drag", 300));
+        assertEquals(new HistoryStats(2, 0, 700, 1_000, 0), manager.getStats());
+
+        // the merged entry is now over budget on its own
+        manager.executeCommand(new Step("drag", 300));
+        manager.executeCommand(new Step("drag", 300));
+        assertEquals(new HistoryStats(0, 0, 0, 1_000, 2), manager.getStats());
+    }
+
+    private static MoveCommand move(DrawingPanel panel, ColoredShape shape, double fromX, double toX) {
+        shape.move(toX, shape.getY());
+        return new MoveCommand(panel, shape, fromX, shape.getY(), toX, shape.getY());
+    }
+
+    // Steps of the same name merge, and the merged step carries both sizes.
+    private final class Step implements Command {
+        private final String name;
+        private long size;
+
+        Step(String name, long size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        @Override
+        public void execute() {
+            log.add("do " + name);
+        }
+
+        @Override
+        public void undo() {
+            log.add("undo " + name);
+        }
+
+        @Override
+        public void redo() {
+            log.add("redo " + name);
+        }
+
+        @Override
+        public long estimatedSize() {
+            return size;
+        }
+
+        @Override
+        public boolean mergeWith(Command next) {
+            if (!(next instanceof Step step) || !step.name.equals(name)) {
+                return false;
+            }
+            size += step.size;
+            return true;
+        }
+    }
+}
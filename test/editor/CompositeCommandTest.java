@@ -0,0 +1,71 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompositeCommandTest {
+    private final DrawingPanel panel = new DrawingPanel();
+    private final CommandManager manager = new CommandManager();
+    private final RectangleShape a = new RectangleShape(0, 0, 10, 10);
+    private final RectangleShape b = new RectangleShape(100, 0, 10, 10);
+
+    CompositeCommandTest() {
+        panel.addShape(a);
+        panel.addShape(b);
+    }
+
+    @Test
+    void undoesAndRedoesAsOneStep() {
+        manager.executeCommand(drag(5, 7));
+        assertPositions(5, 7, 105, 7);
+        assertEquals(1, manager.getStats().undoEntries());
+
+        manager.undo();
+        assertPositions(0, 0, 100, 0);
+        manager.redo();
+        assertPositions(5, 7, 105, 7);
+    }
+
+    @Test
+    void anotherDragOfTheSameShapesMerges() {
+        manager.executeCommand(drag(5, 0));
+        manager.executeCommand(drag(5, 0));
+        assertEquals(1, manager.getStats().undoEntries());
+        assertPositions(10, 0, 110, 0);
+
+        manager.undo();
+        assertPositions(0, 0, 100, 0);
+    }
+
+    @Test
+    void aDragOfOtherShapesDoesNotMerge() {
+        RectangleShape c = new RectangleShape(200, 0, 10, 10);
+        panel.addShape(c);
+        manager.executeCommand(drag(5, 0));
+        c.move(210, 0);
+        manager.executeCommand(new CompositeCommand(panel, List.of(
+                new MoveCommand(panel, a, a.getX(), 0, a.getX(), 0),
+                new MoveCommand(panel, c, 200, 0, 210, 0))));
+        assertEquals(2, manager.getStats().undoEntries());
+    }
+
+    // both shapes dragged by (dx, dy), the way DrawingPanel records a drag
+    private CompositeCommand drag(double dx, double dy) {
+        double ax = a.getX(), ay = a.getY(), bx = b.getX(), by = b.getY();
+        a.move(ax + dx, ay + dy);
+        b.move(bx + dx, by + dy);
+        return new CompositeCommand(panel, List.of(
+                new MoveCommand(panel, a, ax, ay, a.getX(), a.getY()),
+                new MoveCommand(panel, b, bx, by, b.getX(), b.getY())));
+    }
+
+    private void assertPositions(double ax, double ay, double bx, double by) {
+        assertEquals(ax, a.getX());
+        assertEquals(ay, a.getY());
+        assertEquals(bx, b.getX());
+        assertEquals(by, b.getY());
+    }
+}
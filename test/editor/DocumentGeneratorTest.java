@@ -0,0 +1,74 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentGeneratorTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void theSameSeedGivesTheSameFile() throws Exception {
+        String[] options = {"-n", "2000", "--seed", "7", "--mix", "rectangle=2,brush=1,arc=1,group=0.2", "--groups", "3x3"};
+        Path first = directory.resolve("first.vgd");
+        Path second = directory.resolve("second.vgd");
+        DocumentGenerator.parse(options).write(first);
+        DocumentGenerator.parse(options).write(second);
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+
+        Path other = directory.resolve("other.vgd");
+        DocumentGenerator.parse(new String[]{"-n", "2000", "--seed", "8", "--mix", "rectangle=2,brush=1,arc=1,group=0.2",
+                "--groups", "3x3"}).write(other);
+        assertFalse(Files.mismatch(first, other) == -1);
+    }
+
+    @Test
+    void followsTheMixAndStaysOnTheCanvas() {
+        DocumentGenerator generator = new DocumentGenerator().setCount(500).setCanvasSize(800, 600)
+                .setWeight(DocumentGenerator.Kind.RECTANGLE, 0).setWeight(DocumentGenerator.Kind.ELLIPSE, 0)
+                .setWeight(DocumentGenerator.Kind.CIRCLE, 0).setWeight(DocumentGenerator.Kind.ARC, 0)
+                .setWeight(DocumentGenerator.Kind.POLYGON, 0).setBrushVertices(8);
+        List<ColoredShape> shapes = generator.generate();
+        assertEquals(500, shapes.size());
+        for (ColoredShape shape : shapes) {
+            assertTrue(shape instanceof LineShape || shape instanceof BrushShape, shape.getClass().getName());
+            assertTrue(shape.getBoundingBox().intersects(0, 0, 800, 600), "shape off the canvas");
+        }
+    }
+
+    @Test
+    void drawsArcsOpeningBothWays() {
+        int flipped = 0;
+        List<ColoredShape> arcs = DocumentGenerator.parse(new String[]{"-n", "200", "--mix", "arc"}).generate();
+        for (ColoredShape shape : arcs) {
+            if (((ArcShape) shape).getShape().getAngleExtent() < 0) {
+                flipped++;
+            }
+        }
+        assertTrue(flipped > 50 && flipped < 150, flipped + " of 200 arcs open downwards");
+    }
+
+    @Test
+    void buildsGroupTreesOfTheGivenShape() {
+        ShapeGroup group = new DocumentGenerator().setGroups(3, 4).generateGroup();
+        assertEquals(4, group.getChildren().size());
+        ShapeGroup middle = (ShapeGroup) group.getChildren().get(0);
+        assertEquals(4, middle.getChildren().size());
+        ShapeGroup bottom = (ShapeGroup) middle.getChildren().get(0);
+        assertEquals(4, bottom.getChildren().size());
+        assertFalse(bottom.getChildren().get(0) instanceof ShapeGroup);
+    }
+
+    @Test
+    void rejectsUnknownOptions() {
+        assertThrows(IllegalArgumentException.class, () -> DocumentGenerator.parse(new String[]{"--mix", "hexagon=1"}));
+        assertThrows(IllegalArgumentException.class, () -> DocumentGenerator.parse(new String[]{"--groups", "3"}));
+        assertThrows(IllegalArgumentException.class, () -> DocumentGenerator.parse(new String[]{"-n"}));
+    }
+}
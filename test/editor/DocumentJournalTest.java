@@ -0,0 +1,153 @@
+package editor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Simulates a crash by copying the journal directory of a running journal
+// and recovering from the copy, with its last entry damaged.
+class DocumentJournalTest {
+    @TempDir
+    Path root;
+
+    private Path live;
+    private DocumentJournal journal;
+    private final Map<ColoredShape, Long> keys = new IdentityHashMap<>();
+
+    @BeforeEach
+    void startJournal() {
+        live = root.resolve("live");
+        journal = DocumentJournal.open(live);
+        assertNotNull(journal);
+        List<ColoredShape> document = List.of(rectangle(0), rectangle(1));
+        for (ColoredShape shape : document) {
+            keys.put(shape, (long) keys.size());
+        }
+        journal.start(document, keys::get);
+    }
+
+    @AfterEach
+    void closeJournal() throws Exception {
+        journal.close();
+        // a clean close deletes the generation files; wait so the temporary
+        // directory is not removed underneath the writer
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!generationFiles(live).isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void recoversEveryCompleteEntry() throws Exception {
+        journal.shapeAdded(rectangle(2), 2);
+        journal.shapeAdded(rectangle(3), 3);
+        Path crashed = crashCopy(2, 2);
+
+        List<ColoredShape> recovered = DocumentJournal.open(crashed).recover();
+        assertEquals(List.of(0.0, 10.0, 20.0, 30.0), xs(recovered));
+    }
+
+    @Test
+    void stopsAtAnEntryWithATornChecksum() throws Exception {
+        journal.shapeAdded(rectangle(2), 2);
+        journal.shapeAdded(rectangle(3), 3);
+        Path crashed = crashCopy(2, 2);
+        Path log = crashed.resolve("journal-0.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer crc = ByteBuffer.allocate(4);
+            channel.read(crc, channel.size() - 4);
+            channel.write(ByteBuffer.allocate(4).putInt(0, ~crc.getInt(0)), channel.size() - 4);
+        }
+
+        List<ColoredShape> recovered = DocumentJournal.open(crashed).recover();
+        assertEquals(List.of(0.0, 10.0, 20.0), xs(recovered));
+    }
+
+    @Test
+    void stopsAtAnEntryCutOffMidway() throws Exception {
+        ColoredShape removed = rectangle(2);
+        journal.shapeAdded(removed, 2);
+        journal.shapeRemoved(removed);
+        journal.shapeAdded(rectangle(3), 3);
+        Path crashed = crashCopy(2, 3);
+        Path log = crashed.resolve("journal-0.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 7);
+        }
+
+        List<ColoredShape> recovered = DocumentJournal.open(crashed).recover();
+        assertEquals(List.of(0.0, 10.0), xs(recovered));
+    }
+
+    private static RectangleShape rectangle(int i) {
+        return new RectangleShape(10 * i, 5, 8, 8);
+    }
+
+    private static List<Double> xs(List<ColoredShape> shapes) {
+        List<Double> xs = new ArrayList<>();
+        for (ColoredShape shape : shapes) {
+            xs.add(shape.getX());
+        }
+        return xs;
+    }
+
+    // Waits until the writer has appended the given entries after the
+    // snapshot of the starting document, then copies the files as a crash
+    // would leave them.
+    private Path crashCopy(int snapshotShapes, int entries) throws Exception {
+        Path log = live.resolve("journal-0.log");
+        long header = 20 + 8L * snapshotShapes;
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (entryCount(log, header) < entries) {
+            assertTrue(System.nanoTime() < deadline, "journal entries were not written");
+            Thread.sleep(10);
+        }
+        Path copy = root.resolve("crashed");
+        Files.createDirectories(copy);
+        for (Path file : generationFiles(live)) {
+            Files.copy(file, copy.resolve(file.getFileName()));
+        }
+        return copy;
+    }
+
+    private static int entryCount(Path log, long header) throws IOException {
+        if (!Files.exists(log)) {
+            return 0;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(log));
+        int count = 0;
+        for (long position = header; position + 4 <= bytes.limit(); count++) {
+            long next = position + 4 + bytes.getInt((int) position) + 4;
+            if (next > bytes.limit()) {
+                break;
+            }
+            position = next;
+        }
+        return count;
+    }
+
+    private static List<Path> generationFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "{snapshot,journal}-*")) {
+                stream.forEach(files::add);
+            }
+        }
+        return files;
+    }
+}
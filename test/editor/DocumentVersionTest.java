@@ -0,0 +1,95 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentVersionTest {
+    @Test
+    void staysBalancedUnderAscendingInserts() {
+        DocumentVersion version = DocumentVersion.EMPTY;
+        for (int i = 0; i < 10_000; i++) {
+            version = version.with(i, shape(i));
+            assertAvlHeight(version);
+        }
+        assertEquals(10_000, version.size());
+        long expected = 0;
+        for (ColoredShape shape : version) {
+            assertEquals(expected++, (long) shape.getX());
+        }
+    }
+
+    @Test
+    void matchesASortedMapUnderRandomEdits() {
+        SplittableRandom random = new SplittableRandom(3);
+        TreeMap<Long, ColoredShape> expected = new TreeMap<>();
+        DocumentVersion version = DocumentVersion.EMPTY;
+        for (int step = 0; step < 20_000; step++) {
+            long key = random.nextLong(2_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                version = version.without(key);
+            } else {
+                ColoredShape shape = shape(key);
+                expected.put(key, shape);
+                version = version.with(key, shape);
+            }
+            if (step % 500 == 0) {
+                assertSameShapes(expected, version);
+            }
+            assertAvlHeight(version);
+        }
+        assertSameShapes(expected, version);
+        for (Map.Entry<Long, ColoredShape> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), version.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void leavesOlderVersionsUntouched() {
+        List<ColoredShape> shapes = new ArrayList<>();
+        long[] keys = new long[100];
+        for (int i = 0; i < 100; i++) {
+            shapes.add(shape(i));
+            keys[i] = 2L * i;
+        }
+        DocumentVersion original = DocumentVersion.of(shapes, keys);
+        assertAvlHeight(original);
+
+        DocumentVersion edited = original.without(10).with(11, shape(11)).with(10_000, shape(10_000));
+        assertEquals(100, original.size());
+        assertEquals(101, edited.size());
+        assertSame(shapes.get(5), original.get(10));
+        assertNull(edited.get(10));
+        assertNull(original.get(11));
+        assertSame(original, original.without(7), "removing a missing key copies nothing");
+    }
+
+    @Test
+    void rejectsKeysOutsideTheDocument() {
+        assertThrows(IllegalArgumentException.class, () -> DocumentVersion.EMPTY.with(-1, shape(0)));
+    }
+
+    private static ColoredShape shape(long x) {
+        return new RectangleShape(x, 0, 1, 1);
+    }
+
+    private static void assertSameShapes(TreeMap<Long, ColoredShape> expected, DocumentVersion version) {
+        assertEquals(expected.size(), version.size());
+        List<ColoredShape> actual = new ArrayList<>();
+        version.forEach(actual::add);
+        assertIterableEquals(new ArrayList<>(expected.values()), actual);
+    }
+
+    // An AVL tree with n nodes is at most 1.44 log2(n + 2) high.
+    private static void assertAvlHeight(DocumentVersion version) {
+        double bound = 1.4405 * Math.log(version.size() + 2) / Math.log(2) - 0.3277;
+        assertTrue(version.height() <= bound, "height " + version.height() + " for " + version.size() + " shapes");
+    }
+}
@@ -0,0 +1,90 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLogTest {
+    @Test
+    void roundsTheCapacityUpToAPowerOfTwo() {
+        assertEquals(4, new EventLog(4).capacity());
+        assertEquals(8, new EventLog(5).capacity());
+        assertEquals(8, new EventLog(8).capacity());
+        assertEquals(16, new EventLog(9).capacity());
+    }
+
+    @Test
+    void keepsTheNewestEntriesOnceTheRingWrapsAround() throws IOException {
+        EventLog log = new EventLog(8);
+        for (int i = 0; i < 8 + 5; i++) {
+            log.record(i % 2 == 0 ? EventLog.Type.UNDO : EventLog.Type.REDO, MoveCommand.class, i, 100 + i);
+        }
+
+        List<String> lines = dump(log);
+        assertEquals("# 8 of 13 events since", lines.get(0).substring(0, lines.get(0).lastIndexOf(' ')));
+        assertEquals(9, lines.size());
+        for (int i = 0; i < 8; i++) {
+            int sequence = 5 + i;
+            String line = lines.get(i + 1);
+            String expected = (sequence % 2 == 0 ? "UNDO MoveCommand shape=" + sequence + " undo="
+                    : "REDO MoveCommand shape=" + sequence + " redo=") + (100 + sequence);
+            assertTrue(line.endsWith(" " + expected), line);
+        }
+    }
+
+    @Test
+    void leavesOutTheShapeAndSourceWhenThereAreNone() throws IOException {
+        EventLog log = new EventLog(4);
+        log.record(EventLog.Type.COMMAND_EXECUTED, null, -1, 3);
+        assertTrue(dump(log).get(1).endsWith(" COMMAND_EXECUTED undo=3"));
+    }
+
+    // Dumps taken while producers keep lapping the ring only ever show
+    // complete entries, in order.
+    @Test
+    void dumpsOnlyCompleteEntriesWhileProducersWrap() throws Exception {
+        EventLog log = new EventLog(64);
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(4);
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        try {
+            for (int p = 0; p < 4; p++) {
+                producers.submit(() -> {
+                    started.countDown();
+                    for (long i = 0; !stop.get(); i++) {
+                        // shape and value always agree, so a torn entry shows
+                        log.record(EventLog.Type.COMMAND_EXECUTED, MoveCommand.class, i, i);
+                    }
+                });
+            }
+            started.await();
+            for (int round = 0; round < 200; round++) {
+                List<String> lines = dump(log);
+                assertTrue(lines.size() - 1 <= 64);
+                for (String line : lines.subList(1, lines.size())) {
+                    String shape = line.substring(line.indexOf("shape=") + 6, line.indexOf(" undo="));
+                    assertEquals(shape, line.substring(line.indexOf(" undo=") + 6), line);
+                }
+            }
+        } finally {
+            stop.set(true);
+            producers.shutdown();
+        }
+        assertTrue(producers.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static List<String> dump(EventLog log) throws IOException {
+        StringWriter out = new StringWriter();
+        log.dump(out);
+        return out.toString().lines().toList();
+    }
+}
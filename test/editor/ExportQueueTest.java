@@ -0,0 +1,118 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Jobs are run directly on the test thread; the queue window needs a display.
+class ExportQueueTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void replacesTheTargetOnceTheTaskFinished() throws Exception {
+        Path target = existingTarget();
+        ExportQueue.Job job = new ExportQueue.Job(target.toFile(), (j, file) -> {
+            Files.writeString(file.toPath(), "new");
+            assertEquals("old", Files.readString(target));
+        });
+        job.run();
+        job.get();
+        assertEquals("new", Files.readString(target));
+        assertEquals(List.of(target), files());
+    }
+
+    @Test
+    void leavesTheTargetAloneWhenTheTaskFails() throws Exception {
+        Path target = existingTarget();
+        ExportQueue.Job job = new ExportQueue.Job(target.toFile(), (j, file) -> {
+            Files.writeString(file.toPath(), "partial");
+            throw new IOException("disk full");
+        });
+        job.run();
+        ExecutionException e = assertThrows(ExecutionException.class, job::get);
+        assertEquals("disk full", e.getCause().getMessage());
+        assertEquals("old", Files.readString(target));
+        assertEquals(List.of(target), files());
+    }
+
+    @Test
+    void stopsTrackingOnceCancelled() throws Exception {
+        Path target = existingTarget();
+        List<ColoredShape> shapes = Collections.nCopies(10_000, new RectangleShape(0, 0, 1, 1));
+        int[] consumed = new int[1];
+        ExportQueue.Job job = new ExportQueue.Job(target.toFile(), (j, file) -> {
+            for (ColoredShape ignored : j.track(shapes, shapes.size())) {
+                if (++consumed[0] == 1_000) {
+                    j.cancel(false);
+                }
+            }
+        });
+        job.run();
+        assertThrows(CancellationException.class, job::get);
+        assertTrue(consumed[0] < 1_300, consumed[0] + " shapes consumed");
+        assertEquals("old", Files.readString(target));
+        assertEquals(List.of(target), files());
+    }
+
+    @Test
+    void snapshotIgnoresLaterEdits() {
+        DrawingPanel panel = new DrawingPanel();
+        RectangleShape shape = new RectangleShape(10, 10, 20, 20);
+        panel.addShape(shape);
+        DocumentSnapshot snapshot = panel.captureDocument();
+
+        shape.move(500, 500);
+        panel.shapeChanged(shape);
+        panel.addShape(new RectangleShape(0, 0, 5, 5));
+
+        assertEquals(1, snapshot.shapes().size());
+        for (ColoredShape frozen : snapshot.shapes()) {
+            assertEquals(10, frozen.getX());
+        }
+    }
+
+    // File > Save: the document as it was when the job was queued.
+    @Test
+    void savesTheSnapshotAsADocument() throws Exception {
+        DrawingPanel panel = new DrawingPanel();
+        for (ColoredShape shape : TestShapes.everyShapeType()) {
+            panel.addShape(shape);
+        }
+        List<ColoredShape> expected = new ArrayList<>(panel.getShapes());
+        DocumentSnapshot document = panel.captureDocument();
+        panel.addShape(new RectangleShape(0, 0, 5, 5));
+
+        Path target = directory.resolve("drawing.vgd");
+        ExportQueue.Job job = new ExportQueue.Job(target.toFile(), (j, file) ->
+                NativeDocument.save(j.track(document.shapes(), document.shapes().size()), file.toPath()));
+        job.run();
+        job.get();
+
+        Path reference = directory.resolve("reference.vgd");
+        NativeDocument.save(expected, reference);
+        assertArrayEquals(Files.readAllBytes(reference), Files.readAllBytes(target));
+    }
+
+    private Path existingTarget() throws IOException {
+        Path target = directory.resolve("drawing.svg");
+        Files.writeString(target, "old");
+        return target;
+    }
+
+    private List<Path> files() throws IOException {
+        try (var stream = Files.list(directory)) {
+            return stream.toList();
+        }
+    }
+}
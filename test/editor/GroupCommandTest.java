@@ -0,0 +1,118 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// GroupCommand and UngroupCommand, undone and redone through CommandManager.
+class GroupCommandTest {
+    private final DrawingPanel panel = new DrawingPanel();
+    private final CommandManager manager = new CommandManager();
+    private final RectangleShape bottom = new RectangleShape(0, 0, 10, 10);
+    private final RectangleShape middle = new RectangleShape(20, 0, 10, 10);
+    private final RectangleShape top = new RectangleShape(40, 0, 10, 10);
+
+    GroupCommandTest() {
+        panel.addShape(bottom);
+        panel.addShape(middle);
+        panel.addShape(top);
+    }
+
+    @Test
+    void groupUndoRestoresTheStackingOrder() {
+        GroupCommand group = new GroupCommand(panel, List.of(top, bottom));
+        manager.executeCommand(group);
+        assertEquals(List.of(middle, group.getGroup()), panel.getShapes());
+        assertEquals(List.of(bottom, top), group.getGroup().getChildren());
+
+        manager.undo();
+        assertEquals(List.of(bottom, middle, top), panel.getShapes());
+        assertNull(bottom.getParent());
+        manager.redo();
+        assertEquals(List.of(middle, group.getGroup()), panel.getShapes());
+    }
+
+    @Test
+    void ungroupUndoRestoresTheGroupAndItsTransform() {
+        GroupCommand grouping = new GroupCommand(panel, List.of(bottom, middle));
+        manager.executeCommand(grouping);
+        ShapeGroup group = grouping.getGroup();
+        AffineTransform before = group.getTransform();
+        group.move(100, 100);
+        manager.executeCommand(new TransformCommand(panel, group, before, group.getTransform()));
+        AffineTransform moved = group.getTransform();
+
+        manager.executeCommand(new UngroupCommand(panel, group));
+        assertEquals(List.of(top, bottom, middle), panel.getShapes());
+        assertEquals(new Rectangle2D.Double(120, 100, 10, 10), middle.getBoundingBox());
+
+        manager.undo();
+        assertEquals(List.of(top, group), panel.getShapes());
+        assertEquals(List.of(bottom, middle), group.getChildren());
+        assertEquals(moved, group.getTransform());
+        assertEquals(new Rectangle2D.Double(20, 0, 10, 10), middle.getBoundingBox());
+
+        manager.redo();
+        assertEquals(List.of(top, bottom, middle), panel.getShapes());
+        assertEquals(new Rectangle2D.Double(120, 100, 10, 10), middle.getBoundingBox());
+    }
+
+    @Test
+    void changesToAnUndoneGroupStayOutOfTheDocument() {
+        // enough shapes that the snapshot copies changes one by one
+        for (int i = 0; i < 30; i++) {
+            panel.addShape(new RectangleShape(i * 20, 50, 10, 10));
+        }
+        GroupCommand grouping = new GroupCommand(panel, List.of(bottom, middle));
+        manager.executeCommand(grouping);
+        manager.undo();
+        panel.snapshot();
+
+        ShapeGroup group = grouping.getGroup();
+        group.rotate(Math.PI / 4);
+        panel.shapeChanged(group);
+        assertEquals(33, panel.getShapes().size());
+        assertEquals(33, panel.snapshot().size());
+    }
+
+    // A rotated group releases its leaves in single-child wrappers. Redoing
+    // the ungroup has to bring back the same wrappers, or the move recorded
+    // against one of them no longer reaches the document.
+    @Test
+    void redoingAnUngroupKeepsTheWrappersLaterCommandsMoved() {
+        GroupCommand grouping = new GroupCommand(panel, List.of(bottom, middle));
+        manager.executeCommand(grouping);
+        ShapeGroup group = grouping.getGroup();
+        AffineTransform before = group.getTransform();
+        group.rotate(Math.PI / 6);
+        manager.executeCommand(new TransformCommand(panel, group, before, group.getTransform()));
+
+        manager.executeCommand(new UngroupCommand(panel, group));
+        ShapeGroup wrapper = (ShapeGroup) panel.getShapes().get(2);
+        assertEquals(List.of(middle), wrapper.getChildren());
+        double fromX = wrapper.getX(), y = wrapper.getY();
+        wrapper.move(fromX + 200, y);
+        manager.executeCommand(new MoveCommand(panel, wrapper, fromX, y, fromX + 200, y));
+        Rectangle2D moved = wrapper.getBoundingBox();
+
+        manager.undo();
+        manager.undo();
+        assertEquals(List.of(top, group), panel.getShapes());
+        assertEquals(List.of(bottom, middle), group.getChildren());
+        assertTrue(wrapper.getChildren().isEmpty());
+        assertSame(group, middle.getParent());
+
+        manager.redo();
+        manager.redo();
+        assertEquals(3, panel.getShapes().size());
+        assertSame(wrapper, panel.getShapes().get(2));
+        assertEquals(List.of(middle), wrapper.getChildren());
+        assertSame(wrapper, middle.getParent());
+        assertEquals(moved, wrapper.getBoundingBox());
+        assertEquals(panel.getShapes().size(), panel.snapshot().size());
+    }
+}
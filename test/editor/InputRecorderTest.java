@@ -0,0 +1,90 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputRecorderTest {
+    @TempDir
+    Path directory;
+
+    private final DrawingPanel panel = new DrawingPanel();
+    private final ToolBar toolBar = new ToolBar(panel);
+
+    @Test
+    void readsBackEveryEventAndTheToolStateItRanWith() throws IOException {
+        Path file = directory.resolve("session.vgi");
+        InputRecorder recorder = InputRecorder.start(panel, toolBar, file);
+        recorder.mousePressed(event(MouseEvent.MOUSE_PRESSED, 10, 20, InputEvent.BUTTON1_DOWN_MASK, MouseEvent.BUTTON1, 1));
+        // coordinates past the panel's edges come in negative or large
+        recorder.mouseDragged(event(MouseEvent.MOUSE_DRAGGED, -3, -70000, InputEvent.BUTTON1_DOWN_MASK, MouseEvent.NOBUTTON, 0));
+        recorder.mouseReleased(event(MouseEvent.MOUSE_RELEASED, Integer.MAX_VALUE, Integer.MIN_VALUE, 0, MouseEvent.BUTTON1, 1));
+        toolBar.restore("Line", new Color(0x80123456, true), 7);
+        recorder.mouseClicked(event(MouseEvent.MOUSE_CLICKED, 300, 200, InputEvent.SHIFT_DOWN_MASK, MouseEvent.BUTTON3, 2));
+        recorder.close();
+
+        InputRecorder.Recording recording = InputRecorder.read(file);
+        List<InputRecorder.Event> events = recording.events();
+        assertEquals(4, events.size());
+        assertEvent(events.get(0), MouseEvent.MOUSE_PRESSED, 10, 20, InputEvent.BUTTON1_DOWN_MASK, MouseEvent.BUTTON1, 1);
+        assertEvent(events.get(1), MouseEvent.MOUSE_DRAGGED, -3, -70000, InputEvent.BUTTON1_DOWN_MASK, MouseEvent.NOBUTTON, 0);
+        assertEvent(events.get(2), MouseEvent.MOUSE_RELEASED, Integer.MAX_VALUE, Integer.MIN_VALUE, 0, MouseEvent.BUTTON1, 1);
+        assertEvent(events.get(3), MouseEvent.MOUSE_CLICKED, 300, 200, InputEvent.SHIFT_DOWN_MASK, MouseEvent.BUTTON3, 2);
+
+        assertEquals("Rectangle", events.get(2).tool());
+        assertEquals(Color.BLACK, events.get(2).color());
+        assertEquals(1, events.get(2).lineSize());
+        assertEquals("Line", events.get(3).tool());
+        assertEquals(new Color(0x80123456, true), events.get(3).color());
+        assertEquals(7, events.get(3).lineSize());
+        for (int i = 1; i < events.size(); i++) {
+            assertTrue(events.get(i).nanos() >= events.get(i - 1).nanos());
+        }
+    }
+
+    @Test
+    void dropsATornLastRecord() throws IOException {
+        Path file = directory.resolve("torn.vgi");
+        InputRecorder recorder = InputRecorder.start(panel, toolBar, file);
+        recorder.mouseMoved(event(MouseEvent.MOUSE_MOVED, 1, 2, 0, MouseEvent.NOBUTTON, 0));
+        recorder.mouseMoved(event(MouseEvent.MOUSE_MOVED, 100000, 2, 0, MouseEvent.NOBUTTON, 0));
+        recorder.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        List<InputRecorder.Event> events = InputRecorder.read(file).events();
+        assertEquals(1, events.size());
+        assertEquals(1, events.get(0).x());
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path file = Files.writeString(directory.resolve("other.vgi"), "not a recording");
+        assertThrows(IOException.class, () -> InputRecorder.read(file));
+    }
+
+    private MouseEvent event(int id, int x, int y, int modifiers, int button, int clickCount) {
+        return new MouseEvent(panel, id, 0, modifiers, x, y, clickCount, false, button);
+    }
+
+    private static void assertEvent(InputRecorder.Event event, int id, int x, int y, int modifiers, int button, int clickCount) {
+        assertEquals(id, event.id());
+        assertEquals(x, event.x());
+        assertEquals(y, event.y());
+        assertEquals(modifiers, event.modifiers());
+        assertEquals(button, event.button());
+        assertEquals(clickCount, event.clickCount());
+    }
+}
@@ -0,0 +1,86 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+    @Test
+    void percentilesAreWithinAQuarterOfTheExactValue() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        SplittableRandom random = new SplittableRandom(3);
+        long[] samples = new long[10000];
+        for (int i = 0; i < samples.length; i++) {
+            // spread over six orders of magnitude, like paint times
+            samples[i] = (long) Math.pow(10, 2 + random.nextDouble(6));
+            histogram.record(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        assertEquals(samples.length, histogram.count());
+        assertEquals(samples[samples.length - 1], histogram.max());
+        for (double q : new double[]{0.01, 0.5, 0.9, 0.99, 0.999}) {
+            long exact = samples[(int) Math.ceil(q * samples.length) - 1];
+            long estimate = histogram.percentile(q);
+            assertTrue(estimate >= exact && estimate <= exact * 1.25, q + ": " + estimate + " for " + exact);
+        }
+        assertEquals(histogram.max(), histogram.percentile(1));
+    }
+
+    @Test
+    void smallAndHugeValuesLandInTheirOwnBuckets() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        assertEquals(0, histogram.percentile(0.5));
+        for (long value = 0; value < 4; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-7);
+        assertEquals(0, histogram.percentile(0.2));
+        assertEquals(2, histogram.percentile(0.8));
+        assertEquals(3, histogram.percentile(0.9));
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.max());
+        assertEquals(Long.MAX_VALUE, histogram.percentile(1));
+    }
+
+    // Rendering a tile paints the shapes it overlaps and culls the rest of
+    // the document; a frame served from the tile cache does neither.
+    @Test
+    void lastFrameCountsWhatTheFrameDid() {
+        DrawingPanel panel = new DrawingPanel();
+        for (int i = 0; i < 100; i++) {
+            panel.addShape(new RectangleShape(i * 30, i * 20, 10, 10));
+        }
+        panel.setSize(800, 600);
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+
+        paint(panel, image);
+        Metrics.Frame first = Metrics.lastFrame();
+        assertTrue(first.tileMisses() > 0);
+        assertEquals(0, first.tileHits());
+        assertTrue(first.painted() > 0);
+        assertEquals(first.tileMisses() * 100, first.painted() + first.culled());
+
+        paint(panel, image);
+        Metrics.Frame second = Metrics.lastFrame();
+        assertEquals(first.tileMisses(), second.tileHits());
+        assertEquals(0, second.tileMisses());
+        assertEquals(0, second.painted());
+        assertEquals(0, second.culled());
+    }
+
+    private static void paint(DrawingPanel panel, BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        try {
+            panel.paint(g);
+        } finally {
+            g.dispose();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NativeDocumentTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsEveryShapeType() throws IOException {
+        List<ColoredShape> shapes = TestShapes.everyShapeType();
+        Path file = directory.resolve("shapes.vgd");
+        NativeDocument.save(shapes, file);
+
+        List<ColoredShape> loaded = NativeDocument.load(file);
+        assertEquals(shapes.size(), loaded.size());
+        for (int i = 0; i < shapes.size(); i++) {
+            ColoredShape original = shapes.get(i);
+            ColoredShape lazy = loaded.get(i);
+            assertInstanceOf(LazyShape.class, lazy);
+            assertEquals(original.getColor(), lazy.getColor());
+            assertEquals(original.getLineSize(), lazy.getLineSize());
+            assertTrue(lazy.getPaintBounds().contains(original.getBoundingBox()), "index bounds of shape " + i);
+
+            ColoredShape decoded = ((LazyShape) lazy).resolve();
+            assertSame(original.getClass(), decoded.getClass());
+            assertEquals(original.getBoundingBox(), decoded.getBoundingBox());
+        }
+        ShapeGroup outer = (ShapeGroup) ((LazyShape) loaded.get(shapes.size() - 1)).resolve();
+        ShapeGroup inner = (ShapeGroup) outer.getChildren().get(0);
+        assertEquals(((ShapeGroup) shapes.get(shapes.size() - 1)).getTransform(), outer.getTransform());
+        assertEquals(AffineTransform.getRotateInstance(0.3, 5, 5), inner.getTransform());
+        assertEquals(2, inner.getChildren().size());
+    }
+
+    // unedited lazy shapes are copied byte for byte
+    @Test
+    void savesLoadedShapesUnchanged() throws IOException {
+        Path first = directory.resolve("first.vgd");
+        Path second = directory.resolve("second.vgd");
+        NativeDocument.save(TestShapes.everyShapeType(), first);
+        NativeDocument.save(NativeDocument.load(first), second);
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    }
+
+    // decoding and encoding again gives the same records
+    @Test
+    void savesDecodedShapesUnchanged() throws IOException {
+        Path first = directory.resolve("first.vgd");
+        Path second = directory.resolve("second.vgd");
+        NativeDocument.save(TestShapes.everyShapeType(), first);
+        List<ColoredShape> decoded = new ArrayList<>();
+        for (ColoredShape shape : NativeDocument.load(first)) {
+            decoded.add(((LazyShape) shape).resolve());
+        }
+        NativeDocument.save(decoded, second);
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    }
+
+    @Test
+    void rejectsRecordOffsetsOutsideTheRecords() throws IOException {
+        Path file = directory.resolve("corrupt.vgd");
+        NativeDocument.save(TestShapes.everyShapeType(), file);
+        long indexOffset = readLong(file, 16);
+
+        // into the header
+        writeLong(file, indexOffset, 8);
+        assertThrows(IOException.class, () -> NativeDocument.load(file));
+
+        // past the start of the index
+        NativeDocument.save(TestShapes.everyShapeType(), file);
+        writeLong(file, indexOffset + 24, indexOffset + 4);
+        assertThrows(IOException.class, () -> NativeDocument.load(file));
+
+        // going backwards
+        NativeDocument.save(TestShapes.everyShapeType(), file);
+        writeLong(file, indexOffset + 24, NativeDocument.HEADER_SIZE);
+        assertThrows(IOException.class, () -> NativeDocument.load(file));
+    }
+
+    // The brush count sits after the tag, color, line size and origin. The
+    // stroke has six coordinates, so eight would read into the next record.
+    @Test
+    void skipsRecordsWithCountsThatDoNotFit() throws IOException {
+        BrushShape brush = new BrushShape(5, 5);
+        brush.addPoint(10.0, 20.0);
+        brush.addPoint(30.0, 5.0);
+        List<ColoredShape> shapes = List.of(new RectangleShape(0, 0, 10, 10), brush, new LineShape(0, 0, 50, 50));
+        Path file = directory.resolve("corrupt.vgd");
+        for (int count : new int[]{-1, Integer.MAX_VALUE, 8}) {
+            NativeDocument.save(shapes, file);
+            long brushOffset = readLong(file, readLong(file, 16) + 24);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(4).putInt(0, count), brushOffset + 25);
+            }
+
+            List<ColoredShape> loaded = NativeDocument.load(file);
+            LazyShape corrupt = (LazyShape) loaded.get(1);
+            assertThrows(IOException.class, () -> NativeDocument.decode(corrupt.record()), "count " + count);
+            ColoredShape placeholder = corrupt.resolve();
+            assertTrue(placeholder instanceof ShapeGroup group && group.getChildren().isEmpty(), "count " + count);
+            assertFalse(corrupt.contains(10, 20));
+            assertEquals(new LineShape(0, 0, 50, 50).getBoundingBox(), ((LazyShape) loaded.get(2)).resolve().getBoundingBox());
+
+            // painting the document only loses the broken shape
+            DrawingPanel panel = new DrawingPanel();
+            panel.setDocument(loaded);
+            panel.setSize(600, 600);
+            BufferedImage image = new BufferedImage(600, 600, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            panel.paint(g);
+            g.dispose();
+        }
+    }
+
+    @Test
+    void rejectsTruncatedFiles() throws IOException {
+        Path file = directory.resolve("truncated.vgd");
+        NativeDocument.save(TestShapes.everyShapeType(), file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+        assertThrows(IOException.class, () -> NativeDocument.load(file));
+    }
+
+    private static long readLong(Path file, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.read(buffer, position);
+        }
+        return buffer.getLong(0);
+    }
+
+    private static void writeLong(Path file, long position, long value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putLong(0, value), position);
+        }
+    }
+}
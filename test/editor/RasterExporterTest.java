@@ -0,0 +1,161 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Element;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RasterExporterTest {
+    @TempDir
+    Path directory;
+
+    // Tiles must match painting the whole image through one Graphics2D.
+    @Test
+    void tilesMatchASinglePass() throws Exception {
+        DocumentSnapshot document = randomDocument(2_000, 700, 500, false);
+        double scale = 2.5;
+        RasterExporter exporter = new RasterExporter(document, scale);
+        long[] progress = new long[2];
+        BufferedImage tiled = exporter.render(BufferedImage.TYPE_INT_RGB, (done, total) -> {
+            progress[0] = Math.max(progress[0], done);
+            progress[1] = total;
+        });
+
+        assertEquals(1750, tiled.getWidth());
+        assertEquals(1250, tiled.getHeight());
+        assertEquals(0, differingPixels(singlePass(document, scale), tiled));
+        assertEquals(12, progress[1]);
+        assertEquals(12, progress[0]);
+    }
+
+    @Test
+    void oneThreadRendersOnTheCallerAndMatchesTheTiledImage() throws Exception {
+        DocumentSnapshot document = randomDocument(2_000, 700, 500, true);
+        BufferedImage parallel = new RasterExporter(document, 2.5).render(BufferedImage.TYPE_INT_RGB, (done, total) -> {
+        });
+        Set<Thread> threads = new HashSet<>();
+        BufferedImage serial = new RasterExporter(document, 2.5, 1).render(BufferedImage.TYPE_INT_RGB,
+                (done, total) -> threads.add(Thread.currentThread()));
+        assertEquals(Set.of(Thread.currentThread()), threads);
+        assertEquals(0, differingPixels(parallel, serial));
+    }
+
+    // Java2D clips each path to the tile before it flattens curves, so a
+    // curved stroke can come out a pixel different at its edge.
+    @Test
+    void curvedStrokesDifferInOnlyAFewEdgePixels() throws Exception {
+        DocumentSnapshot document = randomDocument(2_000, 700, 500, true);
+        BufferedImage tiled = new RasterExporter(document, 2.5).render(BufferedImage.TYPE_INT_RGB, (done, total) -> {
+        });
+        int differing = differingPixels(singlePass(document, 2.5), tiled);
+        assertTrue(differing < tiled.getWidth() * tiled.getHeight() / 1000, differing + " pixels differ");
+    }
+
+    // Wide enough that the default 64 MB band budget holds only three of the
+    // eight tile rows, so the encoder reads across band boundaries.
+    @Test
+    void streamsTheSameBytesAsAFullImage() throws Exception {
+        DocumentSnapshot document = randomDocument(500, 3280, 1434, true);
+        RasterExporter exporter = new RasterExporter(document, 2.5);
+        for (String format : new String[]{"png", "jpeg"}) {
+            File streamed = directory.resolve("streamed." + format).toFile();
+            File full = directory.resolve("full." + format).toFile();
+            long[] done = new long[1];
+            exporter.write(format, 240, streamed, (d, total) -> done[0] = Math.max(done[0], d));
+            int type = format.equals("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+            RasterExporter.write(exporter.render(type, (d, total) -> {
+            }), format, 240, full);
+
+            assertEquals(17L * 8, done[0], format);
+            assertArrayEquals(Files.readAllBytes(full.toPath()), Files.readAllBytes(streamed.toPath()), format);
+        }
+    }
+
+    @Test
+    void rejectsImagesTooLargeToAddress() {
+        DocumentSnapshot document = randomDocument(0, 100_000, 100_000, false);
+        assertThrows(IllegalArgumentException.class, () -> new RasterExporter(document, 100_000));
+        assertThrows(IllegalArgumentException.class, () -> new RasterExporter(document, 0));
+    }
+
+    @Test
+    void writesTheResolutionIntoPng() throws Exception {
+        File file = directory.resolve("out.png").toFile();
+        RasterExporter.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", 300, file);
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = ImageIO.getImageReaders(in).next();
+            reader.setInput(in);
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            Element physical = (Element) ((Element) metadata.getAsTree("javax_imageio_png_1.0"))
+                    .getElementsByTagName("pHYs").item(0);
+            assertEquals("11811", physical.getAttribute("pixelsPerUnitXAxis"));
+            assertEquals("meter", physical.getAttribute("unitSpecifier"));
+            reader.dispose();
+        }
+    }
+
+    private static BufferedImage singlePass(DocumentSnapshot document, double scale) {
+        BufferedImage image = new BufferedImage((int) Math.ceil(document.width() * scale),
+                (int) Math.ceil(document.height() * scale), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(document.background());
+        g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2d.scale(scale, scale);
+        for (ColoredShape shape : document.shapes()) {
+            shape.paint(g2d);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    private static int differingPixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        int differing = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    differing++;
+                }
+            }
+        }
+        return differing;
+    }
+
+    // Rectangles and lines, plus ellipses if curves is set.
+    static DocumentSnapshot randomDocument(int count, int width, int height, boolean curves) {
+        SplittableRandom random = new SplittableRandom(17);
+        List<ColoredShape> shapes = new ArrayList<>();
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble(-20, width), y = random.nextDouble(-20, height);
+            ColoredShape shape = switch (random.nextInt(curves ? 3 : 2)) {
+                case 0 -> new RectangleShape(x, y, random.nextDouble(1, 80), random.nextDouble(1, 80));
+                case 2 -> new EllipseShape(x, y, random.nextDouble(1, 80), random.nextDouble(1, 80), false);
+                default -> new LineShape(x, y, x + random.nextDouble(-100, 100), y + random.nextDouble(-100, 100));
+            };
+            shape.setColor(new Color(random.nextInt(0x1000000)));
+            shape.setLineSize(1 + random.nextInt(6));
+            shapes.add(shape);
+            keys[i] = i;
+        }
+        return new DocumentSnapshot(DocumentVersion.of(shapes, keys), width, height, Color.WHITE);
+    }
+}
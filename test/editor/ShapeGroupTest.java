@@ -0,0 +1,119 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShapeGroupTest {
+    @Test
+    void boundsFollowADeepLeaf() {
+        RectangleShape leaf = new RectangleShape(10, 10, 20, 20);
+        ShapeGroup inner = new ShapeGroup();
+        inner.add(leaf);
+        inner.add(new RectangleShape(0, 0, 5, 5));
+        ShapeGroup outer = new ShapeGroup();
+        outer.add(inner);
+        outer.add(new RectangleShape(100, 100, 10, 10));
+        // fill the caches on every level
+        assertEquals(new Rectangle2D.Double(0, 0, 110, 110), outer.getBoundingBox());
+
+        leaf.move(200, 50);
+        assertEquals(new Rectangle2D.Double(0, 0, 220, 110), outer.getBoundingBox());
+        assertEquals(new Rectangle2D.Double(0, 0, 220, 70), inner.getBoundingBox());
+
+        leaf.setLineSize(10);
+        assertEquals(leaf.getPaintBounds().getMaxX(), outer.getPaintBounds().getMaxX(), 1e-9);
+    }
+
+    @Test
+    void boundsFollowAddAndRemove() {
+        ShapeGroup group = new ShapeGroup();
+        RectangleShape far = new RectangleShape(500, 500, 10, 10);
+        group.add(new RectangleShape(0, 0, 10, 10));
+        assertEquals(10, group.getWidth(), 1e-9);
+        group.add(far);
+        assertEquals(510, group.getWidth(), 1e-9);
+        group.remove(far);
+        assertEquals(10, group.getWidth(), 1e-9);
+        assertNull(far.getParent());
+    }
+
+    @Test
+    void ungroupDetachesTheChildren() {
+        ShapeGroup outer = new ShapeGroup();
+        ShapeGroup group = new ShapeGroup();
+        RectangleShape a = new RectangleShape(0, 0, 10, 10);
+        RectangleShape b = new RectangleShape(50, 0, 10, 10);
+        group.add(a);
+        group.add(b);
+        outer.add(group);
+        outer.getBoundingBox();
+
+        assertEquals(List.of(a, b), group.ungroup());
+        assertNull(a.getParent());
+        assertTrue(group.getChildren().isEmpty());
+        assertEquals(new Rectangle2D.Double(), outer.getBoundingBox());
+    }
+
+    @Test
+    void moveOnlyChangesTheTransform() {
+        RectangleShape leaf = new RectangleShape(10, 20, 30, 40);
+        ShapeGroup group = new ShapeGroup();
+        group.add(leaf);
+        group.move(110, 220);
+
+        assertEquals(new Rectangle2D.Double(110, 220, 30, 40), group.getBoundingBox());
+        assertEquals(AffineTransform.getTranslateInstance(100, 200), group.getTransform());
+        // the child stays in local coordinates
+        assertEquals(10, leaf.getX(), 1e-9);
+        assertTrue(group.contains(125, 240));
+        assertFalse(group.contains(25, 40));
+    }
+
+    @Test
+    void hitTestingFollowsARotation() {
+        ShapeGroup group = new ShapeGroup();
+        group.add(new RectangleShape(0, 0, 100, 10));
+        group.rotate(Math.PI / 2);
+
+        Rectangle2D bounds = group.getBoundingBox();
+        assertEquals(10, bounds.getWidth(), 1e-9);
+        assertEquals(100, bounds.getHeight(), 1e-9);
+        assertTrue(group.contains(bounds.getCenterX(), bounds.getCenterY() + 40));
+        assertFalse(group.contains(90, 5));
+    }
+
+    @Test
+    void ungroupBakesTheTransformIntoTheChildren() {
+        RectangleShape leaf = new RectangleShape(0, 0, 10, 10);
+        ShapeGroup nested = new ShapeGroup();
+        nested.add(new RectangleShape(20, 0, 10, 10));
+        ShapeGroup group = new ShapeGroup();
+        group.add(leaf);
+        group.add(nested);
+        group.move(50, 60);
+
+        List<ColoredShape> released = group.ungroup();
+        assertSame(leaf, released.get(0));
+        assertEquals(new Rectangle2D.Double(50, 60, 10, 10), leaf.getBoundingBox());
+        assertSame(nested, released.get(1));
+        assertEquals(new Rectangle2D.Double(70, 60, 10, 10), nested.getBoundingBox());
+        assertTrue(group.getTransform().isIdentity());
+    }
+
+    @Test
+    void ungroupKeepsARotatedLeafInPlace() {
+        RectangleShape leaf = new RectangleShape(0, 0, 100, 10);
+        ShapeGroup group = new ShapeGroup();
+        group.add(leaf);
+        group.rotate(Math.PI / 6);
+        Rectangle2D before = group.getBoundingBox();
+
+        ColoredShape released = group.ungroup().get(0);
+        assertEquals(before, released.getBoundingBox());
+    }
+}
@@ -0,0 +1,113 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Checks the quadtree against a linear scan over the same shapes in z-order.
+class ShapeIndexTest {
+    private final SplittableRandom random = new SplittableRandom(11);
+
+    @Test
+    void agreesWithALinearScan() {
+        ShapeIndex index = new ShapeIndex();
+        List<ColoredShape> shapes = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            ColoredShape shape = randomShape();
+            shapes.add(shape);
+            index.insert(shape);
+        }
+        assertMatchesScan(index, shapes);
+    }
+
+    @Test
+    void agreesAfterMovesAndRemovals() {
+        ShapeIndex index = new ShapeIndex();
+        List<ColoredShape> shapes = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            ColoredShape shape = randomShape();
+            shapes.add(shape);
+            index.insert(shape);
+        }
+        for (int i = 0; i < 500; i++) {
+            ColoredShape shape = shapes.get(random.nextInt(shapes.size()));
+            // far outside the initial root, so it has to grow
+            shape.move(random.nextDouble(-5_000, 10_000), random.nextDouble(-5_000, 10_000));
+            index.update(shape);
+        }
+        for (int i = 0; i < 500; i++) {
+            index.remove(shapes.remove(random.nextInt(shapes.size())));
+        }
+        assertEquals(shapes.size(), index.size());
+        assertMatchesScan(index, shapes);
+    }
+
+    @Test
+    void keepsTheZOrderOfAReplacedShape() {
+        ShapeIndex index = new ShapeIndex();
+        ColoredShape below = new RectangleShape(0, 0, 100, 100);
+        ColoredShape above = new RectangleShape(0, 0, 100, 100);
+        index.insert(below);
+        index.insert(above);
+        ColoredShape replacement = new RectangleShape(0, 0, 100, 100);
+        index.replace(below, replacement);
+        assertEquals(0, index.orderOf(replacement));
+        assertEquals(-1, index.orderOf(below));
+        assertSame(above, index.shapeAt(50, 50));
+        assertEquals(List.of(replacement, above), index.query(new Rectangle2D.Double(10, 10, 1, 1)));
+    }
+
+    private ColoredShape randomShape() {
+        double x = random.nextDouble(-200, 3_000);
+        double y = random.nextDouble(-200, 3_000);
+        double w = random.nextInt(20) == 0 ? random.nextDouble(500, 2_000) : random.nextDouble(1, 60);
+        double h = random.nextDouble(1, 60);
+        ColoredShape shape = switch (random.nextInt(4)) {
+            case 0 -> new RectangleShape(x, y, w, h);
+            case 1 -> new EllipseShape(x, y, w, h, false);
+            case 2 -> new LineShape(x, y, x + w, y + h);
+            default -> {
+                ShapeGroup group = new ShapeGroup();
+                group.add(new RectangleShape(x, y, w, h));
+                group.add(new EllipseShape(x + w / 2, y + h / 2, w, h, false));
+                group.setTransform(AffineTransform.getRotateInstance(random.nextDouble(Math.PI), x, y));
+                yield group;
+            }
+        };
+        shape.setLineSize(1 + random.nextInt(4));
+        return shape;
+    }
+
+    private void assertMatchesScan(ShapeIndex index, List<ColoredShape> shapes) {
+        for (int i = 0; i < 2_000; i++) {
+            double px = random.nextDouble(-300, 3_200);
+            double py = random.nextDouble(-300, 3_200);
+            ColoredShape expected = null;
+            for (ColoredShape shape : shapes) {
+                if (shape.contains(px, py)) {
+                    expected = shape;
+                }
+            }
+            assertSame(expected, index.shapeAt(px, py), "shapeAt(" + px + ", " + py + ")");
+        }
+        for (int i = 0; i < 300; i++) {
+            Rectangle2D area = new Rectangle2D.Double(random.nextDouble(-300, 3_200), random.nextDouble(-300, 3_200),
+                    random.nextDouble(1, 800), random.nextDouble(1, 800));
+            List<ColoredShape> expected = new ArrayList<>();
+            for (ColoredShape shape : shapes) {
+                Rectangle2D b = shape.getPaintBounds();
+                if (b.getMinX() <= area.getMaxX() && b.getMaxX() >= area.getMinX()
+                        && b.getMinY() <= area.getMaxY() && b.getMaxY() >= area.getMinY()) {
+                    expected.add(shape);
+                }
+            }
+            assertEquals(expected, index.query(area), "query(" + area + ")");
+        }
+    }
+}
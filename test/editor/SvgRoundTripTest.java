@@ -0,0 +1,103 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// SvgStreamWriter output read back by SvgStreamReader. Coordinates are
+// written with three decimals and matrix terms with six, so geometry only
+// has to match that closely. Polygons come back as closed brush strokes,
+// since SVG import has no polygon shape.
+class SvgRoundTripTest {
+    private static final double EPSILON = 1e-3;
+
+    @Test
+    void readsBackWhatItWrites() throws IOException {
+        List<ColoredShape> shapes = TestShapes.everyShapeType();
+        List<ColoredShape> read = roundTrip(shapes);
+
+        assertEquals(shapes.size(), read.size());
+        for (int i = 0; i < shapes.size(); i++) {
+            assertSameShape(shapes.get(i), read.get(i), "shape " + i);
+        }
+    }
+
+    @Test
+    void keepsNestedGroupTransforms() throws IOException {
+        ShapeGroup inner = new ShapeGroup();
+        inner.add(new RectangleShape(0, 0, 10, 10));
+        inner.setTransform(AffineTransform.getRotateInstance(Math.PI / 6, 5, 5));
+        ShapeGroup outer = new ShapeGroup();
+        outer.add(inner);
+        outer.add(new LineShape(0, 0, 20, 0));
+        AffineTransform transform = AffineTransform.getTranslateInstance(-40.125, 12);
+        transform.scale(2, 0.5);
+        outer.setTransform(transform);
+
+        ShapeGroup read = assertInstanceOf(ShapeGroup.class, roundTrip(List.of(outer)).get(0));
+        assertTransformEquals(outer.getTransform(), read.getTransform());
+        ShapeGroup readInner = assertInstanceOf(ShapeGroup.class, read.getChildren().get(0));
+        assertTransformEquals(inner.getTransform(), readInner.getTransform());
+        assertRectEquals(outer.getBoundingBox(), read.getBoundingBox(), "outer group");
+    }
+
+    private static List<ColoredShape> roundTrip(List<ColoredShape> shapes) throws IOException {
+        StringWriter svg = new StringWriter();
+        new SvgStreamWriter(svg).writeDocument(shapes, 800, 600, Color.WHITE);
+        return new SvgStreamReader().read(new ByteArrayInputStream(svg.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void assertSameShape(ColoredShape expected, ColoredShape actual, String what) {
+        Class<?> type = expected instanceof PolygonShape ? BrushShape.class : expected.getClass();
+        assertSame(type, actual.getClass(), what);
+        if (!(expected instanceof ShapeGroup)) {
+            // a <g> has no stroke of its own
+            assertEquals(expected.getColor(), actual.getColor(), what);
+            assertEquals(expected.getLineSize(), actual.getLineSize(), EPSILON, what);
+        }
+        assertRectEquals(expected.getBoundingBox(), actual.getBoundingBox(), what);
+        if (expected instanceof EllipseShape ellipse) {
+            assertEquals(ellipse.isCircle(), ((EllipseShape) actual).isCircle(), what);
+        } else if (expected instanceof ArcShape arc) {
+            assertEquals(arc.getShape().getAngleStart(), ((ArcShape) actual).getShape().getAngleStart(), what);
+            assertEquals(arc.getShape().getAngleExtent(), ((ArcShape) actual).getShape().getAngleExtent(), what);
+        } else if (expected instanceof BrushShape brush) {
+            BrushShape other = (BrushShape) actual;
+            assertEquals(brush.getPointCount(), other.getPointCount(), what);
+            for (int i = 0; i < brush.getPointCount(); i++) {
+                assertEquals(brush.getPointX(i), other.getPointX(i), EPSILON, what);
+                assertEquals(brush.getPointY(i), other.getPointY(i), EPSILON, what);
+            }
+        } else if (expected instanceof ShapeGroup group) {
+            ShapeGroup other = (ShapeGroup) actual;
+            assertTransformEquals(group.getTransform(), other.getTransform());
+            assertEquals(group.getChildren().size(), other.getChildren().size(), what);
+            for (int i = 0; i < group.getChildren().size(); i++) {
+                assertSameShape(group.getChildren().get(i), other.getChildren().get(i), what + " child " + i);
+            }
+        }
+    }
+
+    private static void assertRectEquals(Rectangle2D expected, Rectangle2D actual, String what) {
+        assertEquals(expected.getX(), actual.getX(), EPSILON, what);
+        assertEquals(expected.getY(), actual.getY(), EPSILON, what);
+        assertEquals(expected.getWidth(), actual.getWidth(), EPSILON, what);
+        assertEquals(expected.getHeight(), actual.getHeight(), EPSILON, what);
+    }
+
+    private static void assertTransformEquals(AffineTransform expected, AffineTransform actual) {
+        double[] e = new double[6], a = new double[6];
+        expected.getMatrix(e);
+        actual.getMatrix(a);
+        assertArrayEquals(e, a, 1e-6);
+    }
+}
@@ -0,0 +1,91 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.*;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SvgStreamWriterTest {
+    @Test
+    void writesOneElementPerShape() throws Exception {
+        Element shapes = parse(TestShapes.everyShapeType());
+        assertEquals(List.of("rect", "ellipse", "circle", "line", "path", "path", "path", "path", "g"), names(shapes));
+
+        Element outer = last(shapes);
+        assertEquals("matrix(1.5 0 0 0.75 300 40)", outer.getAttribute("transform"));
+        assertEquals(List.of("g", "ellipse"), names(outer));
+        assertEquals(List.of("rect", "line"), names(first(outer)));
+    }
+
+    @Test
+    void writesStrokeAttributesOnlyWhenNeeded() throws Exception {
+        RectangleShape plain = new RectangleShape(0, 0, 10, 10);
+        RectangleShape styled = new RectangleShape(0, 0, 10, 10);
+        styled.setColor(new Color(0x12, 0x34, 0x56, 0x80));
+        styled.setLineSize(2.5f);
+        Element shapes = parse(List.of(plain, styled));
+
+        Element first = first(shapes);
+        assertEquals("#000000", first.getAttribute("stroke"));
+        assertFalse(first.hasAttribute("stroke-opacity"));
+        assertFalse(first.hasAttribute("stroke-width"));
+        Element second = last(shapes);
+        assertEquals("#123456", second.getAttribute("stroke"));
+        assertEquals("0.502", second.getAttribute("stroke-opacity"));
+        assertEquals("2.5", second.getAttribute("stroke-width"));
+    }
+
+    @Test
+    void formatsNumbersWithoutExponents() throws Exception {
+        Element rect = first(parse(List.of(new RectangleShape(1e-7, 12_345_678.9, 0.0005, 0.75))));
+        assertEquals("0", rect.getAttribute("x"));
+        assertEquals("12345678.9", rect.getAttribute("y"));
+        assertEquals("0.001", rect.getAttribute("width"));
+        assertEquals("0.75", rect.getAttribute("height"));
+    }
+
+    // the <g> that holds the shapes, after the background <rect>
+    private static Element parse(List<ColoredShape> shapes) throws Exception {
+        StringWriter svg = new StringWriter();
+        new SvgStreamWriter(svg).writeDocument(shapes, 800, 600, Color.WHITE);
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(new InputSource(new StringReader(svg.toString())));
+        Element root = document.getDocumentElement();
+        assertEquals("800", root.getAttribute("width"));
+        return last(root);
+    }
+
+    private static List<Element> children(Element parent) {
+        List<Element> children = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element element) {
+                children.add(element);
+            }
+        }
+        return children;
+    }
+
+    private static List<String> names(Element parent) {
+        return children(parent).stream().map(Element::getLocalName).toList();
+    }
+
+    private static Element first(Element parent) {
+        return children(parent).get(0);
+    }
+
+    private static Element last(Element parent) {
+        List<Element> children = children(parent);
+        return children.get(children.size() - 1);
+    }
+}
@@ -0,0 +1,55 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.List;
+
+final class TestShapes {
+    private TestShapes() {
+    }
+
+    // One shape of every type, plus groups nested two deep with transforms.
+    static List<ColoredShape> everyShapeType() {
+        List<ColoredShape> shapes = new ArrayList<>();
+        shapes.add(new RectangleShape(10.5, 20.25, 30, 40));
+        shapes.add(new EllipseShape(-5, 7, 12.5, 8, false));
+        shapes.add(new EllipseShape(100, 100, 16, 16, true));
+        shapes.add(new LineShape(3, 4, -30.75, 60));
+        ArcShape arc = new ArcShape(40, 50, 60, 20, 0, 180);
+        shapes.add(arc);
+        ArcShape flipped = new ArcShape(40, 80, 60, 20, 0, 180);
+        flipped.setFlipped(true);
+        shapes.add(flipped);
+        BrushShape brush = new BrushShape(200, 150);
+        for (int i = 1; i < 50; i++) {
+            brush.addPoint(200 + i * 1.5, 150 + Math.sin(i / 4.0) * 10);
+        }
+        brush.trimToSize();
+        shapes.add(brush);
+        PolygonShape polygon = new PolygonShape();
+        polygon.addPoint(0, 0);
+        polygon.addPoint(25, 5);
+        polygon.addPoint(10, 30);
+        polygon.closePolygon();
+        shapes.add(polygon);
+
+        ShapeGroup inner = new ShapeGroup();
+        inner.add(new RectangleShape(0, 0, 10, 10));
+        inner.add(new LineShape(0, 0, 10, 10));
+        inner.setTransform(AffineTransform.getRotateInstance(0.3, 5, 5));
+        ShapeGroup outer = new ShapeGroup();
+        outer.add(inner);
+        outer.add(new EllipseShape(20, 20, 5, 10, false));
+        AffineTransform transform = AffineTransform.getTranslateInstance(300, 40);
+        transform.scale(1.5, 0.75);
+        outer.setTransform(transform);
+        shapes.add(outer);
+
+        for (int i = 0; i < shapes.size(); i++) {
+            shapes.get(i).setColor(new Color(0x10203 * (i + 1) | (i % 2 == 0 ? 0xFF000000 : 0x80000000), true));
+            shapes.get(i).setLineSize(1 + i * 0.5f);
+        }
+        return shapes;
+    }
+}